@@ -0,0 +1,88 @@
+package realestate;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// authenticateUser's username index against the scan over every user it replaced, plus session login
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx16g"})
+public class AuthBenchmark {
+    private static final int PROBES = 1024;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int userCount;
+
+    private PropertyManagementSystem pms;
+    private List<User> userList;
+    private final String[] usernames = new String[PROBES];
+    private final String[] passwords = new String[PROBES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData.silenceConsole();
+        pms = new PropertyManagementSystem();
+        BenchmarkData.users(pms, 1, userCount);
+        userList = pms.getUserList();
+        SplittableRandom random = new SplittableRandom(BenchmarkData.SEED);
+        for (int i = 0; i < PROBES; i++) {
+            int userId = 1 + random.nextInt(userCount);
+            usernames[i] = BenchmarkData.username(userId);
+            passwords[i] = BenchmarkData.password(userId);
+        }
+    }
+
+    private int nextProbe() {
+        return next++ & (PROBES - 1);
+    }
+
+    @Benchmark
+    public Object authenticate() {
+        int i = nextProbe();
+        return pms.authenticateUser(usernames[i], passwords[i]);
+    }
+
+    @Benchmark
+    public Object authenticateWrongPassword() {
+        return pms.authenticateUser(usernames[nextProbe()], "wrong");
+    }
+
+    @Benchmark
+    public Object authenticateUnknownUser() {
+        return pms.authenticateUser("nobody", "wrong");
+    }
+
+    // The lookup authenticateUser did before the username index: login() against every user in turn
+    @Benchmark
+    public Object linearScanAuthenticate() {
+        int i = nextProbe();
+        for (User user : userList) {
+            if (user.login(usernames[i], passwords[i])) {
+                return user;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public boolean loginAndLogout() {
+        int i = nextProbe();
+        return pms.logout(pms.login(usernames[i], passwords[i]));
+    }
+}
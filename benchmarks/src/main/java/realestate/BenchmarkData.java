@@ -0,0 +1,113 @@
+package realestate;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+
+// Deterministic synthetic catalogs, users and bookings shared by the benchmarks
+final class BenchmarkData {
+    static final long SEED = 20240501L;
+
+    static final String[] CITIES = {
+        "Springfield", "Riverton", "Lakeside", "Fairview", "Greenville", "Franklin", "Clinton", "Madison",
+        "Georgetown", "Salem", "Ashland", "Burlington", "Manchester", "Oxford", "Milton", "Newport",
+        "Dayton", "Kingston", "Arlington", "Bristol", "Dover", "Hudson", "Jackson", "Marion",
+        "Auburn", "Clayton", "Dallas", "Lexington", "Mount Vernon", "Oakland", "Princeton", "Winchester"
+    };
+    static final String[] DISTRICTS = {"North", "South", "East", "West", "Central", "Old Town", "Harbour", "Hills"};
+    static final String[] TYPES = {"Apartment", "House", "Villa", "Studio", "Townhouse", "Penthouse", "Cottage", "Loft"};
+
+    // Every location string, built once so a large catalog shares them like interned input would
+    private static final String[] LOCATIONS = new String[CITIES.length * DISTRICTS.length];
+
+    static {
+        for (int i = 0; i < LOCATIONS.length; i++) {
+            LOCATIONS[i] = CITIES[i / DISTRICTS.length] + " " + DISTRICTS[i % DISTRICTS.length];
+        }
+    }
+
+    // First day of the synthetic booking calendar
+    static final int BASE_DAY = Math.toIntExact(LocalDate.of(2025, 1, 1).toEpochDay());
+
+    private BenchmarkData() {
+    }
+
+    // The menus print to System.out and audit events go to the console by default; console I/O would
+    // dominate the measurements. Events are still published, just not printed.
+    static void silenceConsole() {
+        System.setProperty("audit.sinks", "none");
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    // Properties with ids 1..count, uniform over locations and types, priced 50k to 2M
+    static Property[] properties(int count) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        Property[] properties = new Property[count];
+        for (int i = 0; i < count; i++) {
+            properties[i] = new Property(i + 1, LOCATIONS[random.nextInt(LOCATIONS.length)],
+                    50_000 + random.nextInt(1_950_000), TYPES[random.nextInt(TYPES.length)]);
+        }
+        return properties;
+    }
+
+    // A system holding the generated catalog, attached without journaling. Properties go in cheapest
+    // first so PriceIndex inserts append instead of shifting the whole array.
+    static PropertyManagementSystem catalog(int count) {
+        PropertyManagementSystem pms = new PropertyManagementSystem();
+        Property[] properties = properties(count);
+        Arrays.sort(properties, Comparator.comparingInt(Property::getPrice).thenComparingInt(Property::getPropertyId));
+        for (Property property : properties) {
+            pms.attachProperty(property);
+        }
+        return pms;
+    }
+
+    static String username(int userId) {
+        return "user" + userId;
+    }
+
+    static String password(int userId) {
+        return "secret" + userId;
+    }
+
+    // Registers count users without journaling, alternating sellers and buyers, ids from firstId
+    static void users(PropertyManagementSystem pms, int firstId, int count) {
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        for (int id = firstId; id < firstId + count; id++) {
+            User user;
+            if (id % 2 == 0) {
+                user = new Seller(id, username(id), username(id) + "@example.com", password(id),
+                        "555-" + id, 1 + random.nextInt(5));
+            } else {
+                user = new Buyer(id, username(id), username(id) + "@example.com", password(id),
+                        100_000 + random.nextInt(1_900_000), CITIES[random.nextInt(CITIES.length)]);
+            }
+            pms.attachUser(user);
+        }
+    }
+
+    static String date(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    // Spreads count back-to-back three-night stays round-robin over properties 1..propertyCount
+    // without journaling. Returns, per property, the first day after its last stay.
+    static int[] bookings(PropertyManagementSystem pms, int propertyCount, int count) {
+        int[] nextFreeDay = new int[propertyCount + 1];
+        Arrays.fill(nextFreeDay, BASE_DAY);
+        String bookingDate = date(BASE_DAY - 30);
+        for (int i = 0; i < count; i++) {
+            int propertyId = 1 + i % propertyCount;
+            int checkIn = nextFreeDay[propertyId];
+            Booking booking = new Booking(pms.nextBookingId(), propertyId, bookingDate, date(checkIn), date(checkIn + 3));
+            if (!pms.attachBooking(booking)) {
+                throw new IllegalStateException("Generated overlapping stay for property " + propertyId);
+            }
+            nextFreeDay[propertyId] = checkIn + 3;
+        }
+        return nextFreeDay;
+    }
+}
@@ -0,0 +1,86 @@
+package realestate;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// processBooking against calendars already holding bookingCount stays spread over the catalog.
+// Successful bookings journal to bookings.txt in the working directory and accumulate over the run.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx16g"})
+public class BookingBenchmark {
+    private static final int PROBES = 1024;
+
+    @Param({"100000"})
+    public int propertyCount;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int bookingCount;
+
+    private PropertyManagementSystem pms;
+    private int[] nextFreeDay;
+    private final int[] probeProperties = new int[PROBES];
+    private final Booking[] conflicting = new Booking[PROBES];
+    private String bookingDate;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData.silenceConsole();
+        pms = BenchmarkData.catalog(propertyCount);
+        nextFreeDay = BenchmarkData.bookings(pms, propertyCount, bookingCount);
+        bookingDate = BenchmarkData.date(BenchmarkData.BASE_DAY - 30);
+        // Conflict probes repeat the first stay of properties that have one, under fresh ids
+        int booked = Math.min(propertyCount, bookingCount);
+        SplittableRandom random = new SplittableRandom(BenchmarkData.SEED);
+        for (int i = 0; i < PROBES; i++) {
+            probeProperties[i] = 1 + random.nextInt(propertyCount);
+            int propertyId = 1 + random.nextInt(booked);
+            conflicting[i] = new Booking(Integer.MAX_VALUE - i, propertyId, bookingDate,
+                    BenchmarkData.date(BenchmarkData.BASE_DAY), BenchmarkData.date(BenchmarkData.BASE_DAY + 3));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Journal.closeAll();
+    }
+
+    // Books the next free three nights of a random property; always succeeds and journals
+    @Benchmark
+    public boolean processBooking() throws IOException {
+        int propertyId = probeProperties[next++ & (PROBES - 1)];
+        int checkIn = nextFreeDay[propertyId];
+        nextFreeDay[propertyId] = checkIn + 3;
+        return pms.processBooking(new Booking(pms.nextBookingId(), propertyId, bookingDate,
+                BenchmarkData.date(checkIn), BenchmarkData.date(checkIn + 3)));
+    }
+
+    // A stay overlapping an existing one; rejected before anything is journaled
+    @Benchmark
+    public boolean processConflictingBooking() throws IOException {
+        return pms.processBooking(conflicting[next++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean isAvailable() {
+        int propertyId = probeProperties[next++ & (PROBES - 1)];
+        return pms.isAvailable(propertyId, BenchmarkData.BASE_DAY + 1, BenchmarkData.BASE_DAY + 8);
+    }
+}
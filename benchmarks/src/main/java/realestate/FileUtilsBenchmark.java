@@ -0,0 +1,112 @@
+package realestate;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// FileUtils appends through the shared journal, against the open-append-close writer it replaced,
+// and readFromFile over logs of increasing length. Files are created in the working directory.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileUtilsBenchmark {
+    @State(Scope.Benchmark)
+    public static class WriteState {
+        @Param({"64", "256", "4096"})
+        public int recordBytes;
+
+        String record;
+        String filename;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            char[] chars = new char[recordBytes];
+            Arrays.fill(chars, 'x');
+            record = new String(chars);
+            filename = "write-" + recordBytes + ".txt";
+            Files.deleteIfExists(Paths.get(filename));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Journal.closeAll();
+            Files.deleteIfExists(Paths.get(filename));
+            Files.deleteIfExists(Paths.get(filename + ".legacy"));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ReadState {
+        @Param({"1000", "100000", "1000000", "10000000"})
+        public int lineCount;
+
+        String filename;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            filename = "read-" + lineCount + ".txt";
+            Path path = Paths.get(filename);
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                for (int i = 1; i <= lineCount; i++) {
+                    writer.write(Records.encode(Records.PROPERTY_ADDED, i, "Springfield Harbour", 250_000 + i, "Apartment", true));
+                    writer.newLine();
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(Paths.get(filename));
+        }
+    }
+
+    @Benchmark
+    public long writeToFile(WriteState state) throws IOException {
+        return FileUtils.writeToFile(state.filename, state.record);
+    }
+
+    // Concurrent appenders share one group commit
+    @Benchmark
+    @Threads(8)
+    public long writeToFileContended(WriteState state) throws IOException {
+        return FileUtils.writeToFile(state.filename, state.record);
+    }
+
+    // The original writeToFile: open, append one line and close on every call
+    @Benchmark
+    public void openAppendClose(WriteState state) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(state.filename + ".legacy", true))) {
+            writer.write(state.record);
+            writer.newLine();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<String> readFromFile(ReadState state) throws IOException {
+        return FileUtils.readFromFile(state.filename);
+    }
+}
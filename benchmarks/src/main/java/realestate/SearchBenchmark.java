@@ -0,0 +1,89 @@
+package realestate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Substring search over the catalog: the list scan, the trigram-indexed system search with its first
+// page and top-k forms, the buyer and seller variants, and the price-index backed budget search
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx16g"})
+public class SearchBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int catalogSize;
+
+    // A city (1/32 of the catalog), a type (1/8) and a term that matches nothing
+    @Param({"Springfield", "Villa", "Atlantis"})
+    public String criteria;
+
+    private PropertyManagementSystem pms;
+    private List<Property> propertyList;
+    private Seller seller;
+    private Buyer buyer;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData.silenceConsole();
+        pms = BenchmarkData.catalog(catalogSize);
+        propertyList = pms.getPropertyList();
+        // The seller owns every hundredth listing
+        int[] listings = new int[Math.max(1, catalogSize / 100)];
+        for (int i = 0; i < listings.length; i++) {
+            listings[i] = 1 + i * 100;
+        }
+        seller = new Seller(1, "seller", "seller@example.com", "secret", "555-0001", 5);
+        seller.restoreListings(listings, listings.length);
+        buyer = new Buyer(2, "buyer", "buyer@example.com", "secret", 400_000, criteria);
+        pms.attachUser(seller);
+        pms.attachUser(buyer);
+    }
+
+    @Benchmark
+    public List<?> propertyListScan() {
+        return Property.searchProperty(criteria, propertyList);
+    }
+
+    @Benchmark
+    public List<?> systemSearch() {
+        return Property.searchProperty(criteria, pms);
+    }
+
+    @Benchmark
+    public Object systemSearchFirstPage() {
+        return pms.searchPage(criteria, true, -1, 20);
+    }
+
+    @Benchmark
+    public List<?> systemSearchCheapest10() {
+        return pms.searchTop(criteria, true, SearchOrder.CHEAPEST, 10);
+    }
+
+    @Benchmark
+    public List<?> buyerSearch() {
+        return buyer.searchProperty(pms, criteria);
+    }
+
+    @Benchmark
+    public List<?> sellerSearch() {
+        return seller.searchProperty(criteria);
+    }
+
+    @Benchmark
+    public List<?> buyerBudgetSearch() {
+        return buyer.searchWithinBudget(pms, 100);
+    }
+}
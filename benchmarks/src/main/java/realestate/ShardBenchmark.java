@@ -0,0 +1,87 @@
+package realestate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// ShardedPropertySystem with 1 to 16 location shards over the same catalog: concurrent listing writes,
+// which contend on one catalog lock and journal per shard, and fanned-out searches.
+// Journals go to a temporary directory that is deleted after the run.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class ShardBenchmark {
+    @Param({"1", "4", "16"})
+    public int shards;
+
+    @Param({"100000"})
+    public int catalogSize;
+
+    private Path dataDir;
+    private ShardedPropertySystem system;
+    private final AtomicInteger nextPropertyId = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkData.silenceConsole();
+        dataDir = Files.createTempDirectory("shard-bench");
+        system = ShardedPropertySystem.recover(dataDir, shards);
+        for (Property property : BenchmarkData.properties(catalogSize)) {
+            system.addProperty(property);
+        }
+        nextPropertyId.set(catalogSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Journal.closeAll();
+        try (Stream<Path> files = Files.walk(dataDir)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    // New listings in random locations from eight threads
+    @Benchmark
+    @Threads(8)
+    public void addProperty() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        system.addProperty(new Property(nextPropertyId.incrementAndGet(),
+                BenchmarkData.CITIES[random.nextInt(BenchmarkData.CITIES.length)] + " "
+                        + BenchmarkData.DISTRICTS[random.nextInt(BenchmarkData.DISTRICTS.length)],
+                50_000 + random.nextInt(1_950_000), BenchmarkData.TYPES[random.nextInt(BenchmarkData.TYPES.length)]));
+    }
+
+    @Benchmark
+    public List<Property> searchFanOut() {
+        return system.searchProperty("harbour", true);
+    }
+
+    @Benchmark
+    public List<Property> searchCheapest10() {
+        return system.searchCheapest("harbour", true, 10);
+    }
+}
@@ -0,0 +1,247 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// One audited action. Slots in the ring are reused, so sinks must copy anything they keep.
+class AuditEvent {
+    enum Type {
+        LOGIN, LOGIN_FAILED, LOGOUT, PROFILE_UPDATED, SEARCH, WISHLIST_ADDED, BUDGET_SET,
+        BOOKING_CONFIRMED, BOOKING_REJECTED, BOOKING_CANCELLED
+    }
+
+    Type type;
+    long timeMillis;
+    // Username, when the action has one
+    String user;
+    // Role for logout and profile changes, criteria for searches
+    String detail;
+    // Property id for wishlist and booking events, budget for BUDGET_SET
+    long value;
+
+    // Written last by the publisher; the slot holds this sequence once its fields are visible
+    volatile long sequence = -1;
+
+    // The console line the application used to print for this action
+    public String describe() {
+        switch (type) {
+            case LOGIN:
+                return "User authenticated: " + user;
+            case LOGIN_FAILED:
+                return "Authentication failed for user: " + user;
+            case LOGOUT:
+                return detail + " logged out: " + user;
+            case PROFILE_UPDATED:
+                return detail + " profile updated: " + user;
+            case SEARCH:
+                return "Searching properties with criteria: " + detail;
+            case WISHLIST_ADDED:
+                return "Property added to wishlist: Property ID: " + value;
+            case BUDGET_SET:
+                return "Budget range set to: " + value;
+            case BOOKING_CONFIRMED:
+                return "Booking confirmed for property: " + value;
+            case BOOKING_REJECTED:
+                return "Booking failed for property: " + value;
+            default:
+                return "Booking cancelled for property: " + value;
+        }
+    }
+}
+
+// Receives events on the audit thread, in publication order
+interface AuditSink {
+    void accept(AuditEvent event) throws IOException;
+
+    // Called whenever the ring has been drained
+    default void flush() throws IOException {
+    }
+}
+
+// Prints each event as the line the menus have always shown
+class ConsoleAuditSink implements AuditSink {
+    @Override
+    public void accept(AuditEvent event) {
+        System.out.println(event.describe());
+    }
+}
+
+// Appends each event to a file as a structured record: type, epoch millis, user, detail and value
+class FileAuditSink implements AuditSink {
+    private final BufferedWriter writer;
+
+    public FileAuditSink(Path path) throws IOException {
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void accept(AuditEvent event) throws IOException {
+        writer.write(Records.encode(event.type.name(), event.timeMillis, event.user == null ? "" : event.user,
+                event.detail == null ? "" : event.detail, event.value));
+        writer.newLine();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+}
+
+// Audit events from the hot paths go into a preallocated ring (audit.bufferSize slots, 8192 by default)
+// and a daemon thread hands them to the sinks, so callers never wait on console or disk I/O. Publishing
+// claims a sequence with one CAS and fills the slot in place; when the consumer has fallen a whole ring
+// behind, the event is dropped and counted instead of blocking. audit.sinks picks the sinks: a comma
+// separated list of "console" (the default), "file:<path>" and "none"; more can be added with addSink.
+class AuditLog {
+    private static final LongAdder PUBLISHED = Metrics.counter("audit.published");
+    private static final LongAdder DROPPED = Metrics.counter("audit.dropped");
+    private static final LongAdder SINK_FAILURES = Metrics.counter("audit.sinkFailures");
+    // The consumer frees slots for reuse this many at a time, or whenever it catches up, so producers
+    // are not invalidated by a cursor write per event
+    private static final int RELEASE_BATCH = 64;
+    private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final AuditEvent[] ring;
+    private static final int mask;
+    private static final List<AuditSink> sinks = new CopyOnWriteArrayList<>();
+    private static final AtomicLong claimed = new AtomicLong();
+    // Next sequence the consumer will read; slots below it may be reused
+    private static volatile long consumed;
+    // Sequences below this have been handed to every sink and flushed
+    private static volatile long delivered;
+    private static volatile boolean sleeping;
+    private static final Thread consumer;
+
+    static {
+        int size = Integer.highestOneBit(Math.max(2, Integer.getInteger("audit.bufferSize", 8192)) * 2 - 1);
+        ring = new AuditEvent[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new AuditEvent();
+        }
+        mask = size - 1;
+        for (String sink : System.getProperty("audit.sinks", "console").split(",")) {
+            sink = sink.trim();
+            try {
+                if (sink.equals("console")) {
+                    sinks.add(new ConsoleAuditSink());
+                } else if (sink.startsWith("file:")) {
+                    sinks.add(new FileAuditSink(Paths.get(sink.substring(5))));
+                } else if (!sink.isEmpty() && !sink.equals("none")) {
+                    System.err.println("Unknown audit sink: " + sink);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not open audit sink " + sink + ": " + e.getMessage());
+            }
+        }
+        Metrics.gauge("audit.backlog", () -> claimed.get() - consumed);
+        consumer = new Thread(AuditLog::run, "audit-log");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    private AuditLog() {
+    }
+
+    public static void addSink(AuditSink sink) {
+        sinks.add(sink);
+    }
+
+    public static void removeSink(AuditSink sink) {
+        sinks.remove(sink);
+    }
+
+    public static void publish(AuditEvent.Type type, String user) {
+        publish(type, user, null, 0);
+    }
+
+    public static void publish(AuditEvent.Type type, String user, String detail) {
+        publish(type, user, detail, 0);
+    }
+
+    public static void publish(AuditEvent.Type type, String user, long value) {
+        publish(type, user, null, value);
+    }
+
+    // Never blocks; returns without publishing if the ring is full
+    public static void publish(AuditEvent.Type type, String user, String detail, long value) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= ring.length) {
+                DROPPED.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        AuditEvent event = ring[(int) sequence & mask];
+        event.type = type;
+        event.timeMillis = System.currentTimeMillis();
+        event.user = user;
+        event.detail = detail;
+        event.value = value;
+        event.sequence = sequence;
+        PUBLISHED.increment();
+        if (sleeping) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    // Waits, up to a second, until everything published so far has reached the sinks. The menus call
+    // this before prompting so the console reads in order.
+    public static void flush() {
+        long target = claimed.get();
+        long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+        while (delivered < target && System.nanoTime() - deadline < 0) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    private static void run() {
+        long next = 0;
+        while (true) {
+            AuditEvent event = ring[(int) next & mask];
+            if (event.sequence == next) {
+                for (AuditSink sink : sinks) {
+                    try {
+                        sink.accept(event);
+                    } catch (IOException | RuntimeException e) {
+                        SINK_FAILURES.increment();
+                    }
+                }
+                event.user = null;
+                event.detail = null;
+                if ((++next & RELEASE_BATCH - 1) == 0) {
+                    consumed = next;
+                }
+                continue;
+            }
+            consumed = next;
+            if (delivered < next) {
+                for (AuditSink sink : sinks) {
+                    try {
+                        sink.flush();
+                    } catch (IOException | RuntimeException e) {
+                        SINK_FAILURES.increment();
+                    }
+                }
+                delivered = next;
+                continue;
+            }
+            sleeping = true;
+            if (event.sequence != next) {
+                LockSupport.parkNanos(AuditLog.class, TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            sleeping = false;
+        }
+    }
+}
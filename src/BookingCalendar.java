@@ -0,0 +1,225 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Half-open range of epoch days [startDay, endDay)
+class DateRange {
+    private final int startDay;
+    private final int endDay;
+
+    public DateRange(int startDay, int endDay) {
+        this.startDay = startDay;
+        this.endDay = endDay;
+    }
+
+    public int getStartDay() {
+        return startDay;
+    }
+
+    public int getEndDay() {
+        return endDay;
+    }
+
+    public LocalDate getStart() {
+        return LocalDate.ofEpochDay(startDay);
+    }
+
+    public LocalDate getEnd() {
+        return LocalDate.ofEpochDay(endDay);
+    }
+
+    @Override
+    public String toString() {
+        return getStart() + " to " + getEnd();
+    }
+}
+
+// Per-property sorted, disjoint booked ranges; checks and gap queries binary search the property's ranges.
+// Properties are spread over lock stripes so bookings for different properties do not contend.
+class BookingCalendar {
+    private static class Ranges {
+        int[] starts = new int[4];
+        int[] ends = new int[4];
+        int[] bookingIds = new int[4];
+        int size;
+
+        // Index of the last range starting before day, or -1
+        int floor(int day) {
+            int pos = Arrays.binarySearch(starts, 0, size, day);
+            return pos >= 0 ? pos - 1 : -pos - 2;
+        }
+
+        boolean isFree(int start, int end) {
+            int before = floor(end);
+            return before < 0 || ends[before] <= start;
+        }
+
+        void insert(int start, int end, int bookingId) {
+            int pos = floor(start) + 1;
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                bookingIds = Arrays.copyOf(bookingIds, size * 2);
+            }
+            System.arraycopy(starts, pos, starts, pos + 1, size - pos);
+            System.arraycopy(ends, pos, ends, pos + 1, size - pos);
+            System.arraycopy(bookingIds, pos, bookingIds, pos + 1, size - pos);
+            starts[pos] = start;
+            ends[pos] = end;
+            bookingIds[pos] = bookingId;
+            size++;
+        }
+
+        boolean delete(int start, int bookingId) {
+            int pos = Arrays.binarySearch(starts, 0, size, start);
+            if (pos < 0 || bookingIds[pos] != bookingId) {
+                return false;
+            }
+            System.arraycopy(starts, pos + 1, starts, pos, size - pos - 1);
+            System.arraycopy(ends, pos + 1, ends, pos, size - pos - 1);
+            System.arraycopy(bookingIds, pos + 1, bookingIds, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+    }
+
+    private static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final IntObjectMap<Ranges> byProperty = new IntObjectMap<>();
+    }
+
+    private final Stripe[] stripes;
+
+    public BookingCalendar() {
+        this(Runtime.getRuntime().availableProcessors() * 8);
+    }
+
+    public BookingCalendar(int concurrency) {
+        int count = Integer.highestOneBit(Math.max(1, concurrency) * 2 - 1);
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // Lock guarding a property's calendar; hold it to make a check and its follow-up atomic
+    public ReentrantLock lockFor(int propertyId) {
+        return stripe(propertyId).lock;
+    }
+
+    // The distinct locks guarding the given properties' calendars, in the order they must be taken; a
+    // thread holding one stripe never waits for another, so batches locking in this order cannot deadlock
+    public List<ReentrantLock> locksFor(int[] propertyIds) {
+        boolean[] needed = new boolean[stripes.length];
+        for (int propertyId : propertyIds) {
+            needed[index(propertyId)] = true;
+        }
+        List<ReentrantLock> locks = new ArrayList<>();
+        for (int i = 0; i < stripes.length; i++) {
+            if (needed[i]) {
+                locks.add(stripes[i].lock);
+            }
+        }
+        return locks;
+    }
+
+    private Stripe stripe(int propertyId) {
+        return stripes[index(propertyId)];
+    }
+
+    private int index(int propertyId) {
+        int h = propertyId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    public static int toEpochDay(String date) {
+        try {
+            return Math.toIntExact(LocalDate.parse(date).toEpochDay());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Not a yyyy-MM-dd date: " + date);
+        }
+    }
+
+    public boolean isFree(int propertyId, int startDay, int endDay) {
+        Stripe stripe = stripe(propertyId);
+        stripe.lock.lock();
+        try {
+            Ranges ranges = stripe.byProperty.get(propertyId);
+            return ranges == null || ranges.isFree(startDay, endDay);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Records the booking's stay if it does not overlap an existing one
+    public boolean reserve(Booking booking) {
+        Stripe stripe = stripe(booking.getPropertyId());
+        stripe.lock.lock();
+        try {
+            Ranges ranges = stripe.byProperty.get(booking.getPropertyId());
+            if (ranges == null) {
+                ranges = new Ranges();
+                stripe.byProperty.put(booking.getPropertyId(), ranges);
+            }
+            if (!ranges.isFree(booking.getCheckInDay(), booking.getCheckOutDay())) {
+                return false;
+            }
+            ranges.insert(booking.getCheckInDay(), booking.getCheckOutDay(), booking.getBookingId());
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public boolean release(Booking booking) {
+        Stripe stripe = stripe(booking.getPropertyId());
+        stripe.lock.lock();
+        try {
+            Ranges ranges = stripe.byProperty.get(booking.getPropertyId());
+            if (ranges == null || !ranges.delete(booking.getCheckInDay(), booking.getBookingId())) {
+                return false;
+            }
+            if (ranges.size == 0) {
+                stripe.byProperty.remove(booking.getPropertyId());
+            }
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Unbooked gaps of the property within [fromDay, toDay), in date order
+    public List<DateRange> freeWindows(int propertyId, int fromDay, int toDay) {
+        List<DateRange> windows = new ArrayList<>();
+        if (fromDay >= toDay) {
+            return windows;
+        }
+        Stripe stripe = stripe(propertyId);
+        int cursor = fromDay;
+        stripe.lock.lock();
+        try {
+            Ranges ranges = stripe.byProperty.get(propertyId);
+            if (ranges != null) {
+                int i = Math.max(ranges.floor(fromDay), 0);
+                for (; i < ranges.size && ranges.starts[i] < toDay; i++) {
+                    if (ranges.ends[i] <= cursor) {
+                        continue;
+                    }
+                    if (ranges.starts[i] > cursor) {
+                        windows.add(new DateRange(cursor, ranges.starts[i]));
+                    }
+                    cursor = ranges.ends[i];
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (cursor < toDay) {
+            windows.add(new DateRange(cursor, toDay));
+        }
+        return windows;
+    }
+}
@@ -0,0 +1,651 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+// Outcome of one import: row counts and the first rejected rows with their reasons
+class ImportResult {
+    static final int MAX_ERRORS = 100;
+
+    private long rows;
+    private long imported;
+    private final List<String> errors = new ArrayList<>();
+    private long rejected;
+
+    void accepted() {
+        rows++;
+        imported++;
+    }
+
+    void rejected(long line, String reason) {
+        rows++;
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("line " + line + ": " + reason);
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
+
+// Streams CSV (with a header row) or JSON-lines files of properties, sellers, buyers or bookings into a
+// system. Chunks of lines are parsed in parallel while earlier chunks are applied in file order; each
+// chunk is validated, attached and journaled as one batch with a single append and fsync per log.
+//
+//   properties: propertyId, location, price, type [, available] [, seller (username)] [, latitude, longitude]
+//   sellers:    userId, username, email, password [, contactInfo] [, rating]
+//   buyers:     userId, username, email, password [, budgetRange] [, locationWanted]
+//   bookings:   bookingId, propertyId, checkIn, checkOut [, bookingDate] [, userId]
+//
+// Records are one per line; quoted CSV fields may contain commas and doubled quotes but not newlines.
+class BulkImporter {
+    enum Kind {
+        PROPERTIES("propertyId", "location", "price", "type", "available", "seller", "latitude", "longitude"),
+        SELLERS("userId", "username", "email", "password", "contactInfo", "rating"),
+        BUYERS("userId", "username", "email", "password", "budgetRange", "locationWanted"),
+        BOOKINGS("bookingId", "propertyId", "checkIn", "checkOut", "bookingDate", "userId");
+
+        final String[] columns;
+
+        Kind(String... columns) {
+            this.columns = columns;
+        }
+
+        int column(String name) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equalsIgnoreCase(name.trim())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // A parsed chunk: one entity per valid line, or the reason the line was rejected
+    private static class Chunk {
+        final long firstLine;
+        final Object[] items;
+        final String[] extras;
+        final String[] errors;
+
+        Chunk(long firstLine, int size) {
+            this.firstLine = firstLine;
+            this.items = new Object[size];
+            this.extras = new String[size];
+            this.errors = new String[size];
+        }
+    }
+
+    private static final LatencyHistogram BATCH = Metrics.histogram("import.batch");
+    // Rows imported; rejected rows are not counted
+    private static final LongAdder ROWS = Metrics.counter("import.rows");
+
+    private final PropertyManagementSystem pms;
+    private final int batchSize;
+    private final int threads;
+    // Ids of registered users; the system indexes users by name only
+    private Set<Integer> userIds;
+
+    public BulkImporter(PropertyManagementSystem pms) {
+        this(pms, Integer.getInteger("import.batchSize", 10000), Runtime.getRuntime().availableProcessors());
+    }
+
+    public BulkImporter(PropertyManagementSystem pms, int batchSize, int threads) {
+        this.pms = pms;
+        this.batchSize = batchSize;
+        this.threads = Math.max(1, threads);
+    }
+
+    // JSON lines for .jsonl and .json files, CSV otherwise
+    public ImportResult importFile(Path path, Kind kind) throws IOException {
+        String name = path.getFileName().toString().toLowerCase();
+        boolean json = name.endsWith(".jsonl") || name.endsWith(".json");
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "import-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ImportResult result = new ImportResult();
+        if (kind == Kind.SELLERS || kind == Kind.BUYERS) {
+            userIds = new HashSet<>();
+            for (User user : pms.getUserList()) {
+                userIds.add(user.getUserId());
+            }
+        }
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            int[] columnMap = null;
+            long lineNumber = 0;
+            if (!json) {
+                String header = reader.readLine();
+                if (header == null) {
+                    return result;
+                }
+                lineNumber++;
+                columnMap = columnMap(kind, splitCsv(header));
+            }
+            int[] mapping = columnMap;
+            List<String> lines = new ArrayList<>(batchSize);
+            long chunkStart = lineNumber + 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                lines.add(line);
+                if (lines.size() == batchSize) {
+                    List<String> chunkLines = lines;
+                    long first = chunkStart;
+                    inFlight.add(parsers.submit(() -> parse(kind, json, mapping, first, chunkLines)));
+                    lines = new ArrayList<>(batchSize);
+                    chunkStart = lineNumber + 1;
+                    // Bounded look-ahead keeps memory flat however large the file is
+                    while (inFlight.size() > threads * 2) {
+                        apply(kind, await(inFlight.poll()), result);
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                List<String> chunkLines = lines;
+                long first = chunkStart;
+                inFlight.add(parsers.submit(() -> parse(kind, json, mapping, first, chunkLines)));
+            }
+            while (!inFlight.isEmpty()) {
+                apply(kind, await(inFlight.poll()), result);
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+        return result;
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import parser failed", e.getCause());
+        }
+    }
+
+    // For each header column, the schema column it fills, or -1 to ignore it
+    private static int[] columnMap(Kind kind, List<String> header) {
+        int[] map = new int[header.size()];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = kind.column(header.get(i));
+        }
+        for (int required = 0; required < 4; required++) {
+            boolean present = false;
+            for (int column : map) {
+                present |= column == required;
+            }
+            if (!present) {
+                throw new IllegalArgumentException("Missing column: " + kind.columns[required]);
+            }
+        }
+        return map;
+    }
+
+    private static Chunk parse(Kind kind, boolean json, int[] columnMap, long firstLine, List<String> lines) {
+        Chunk chunk = new Chunk(firstLine, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.trim().isEmpty()) {
+                chunk.errors[i] = "";
+                continue;
+            }
+            try {
+                String[] values = json ? jsonValues(kind, line) : csvValues(columnMap, kind, line);
+                chunk.items[i] = toEntity(kind, values);
+                if (kind == Kind.PROPERTIES) {
+                    chunk.extras[i] = values[5] == null || values[5].isEmpty() ? null : values[5];
+                }
+            } catch (RuntimeException e) {
+                chunk.errors[i] = e.getMessage() == null ? e.toString() : e.getMessage();
+            }
+        }
+        return chunk;
+    }
+
+    private static Object toEntity(Kind kind, String[] v) {
+        for (int i = 0; i < 4; i++) {
+            if (v[i] == null || v[i].isEmpty()) {
+                throw new IllegalArgumentException("Missing " + kind.columns[i]);
+            }
+        }
+        switch (kind) {
+            case PROPERTIES: {
+                Property property = new Property(number(v, 0), v[1], number(v, 2), v[3]);
+                if (v[4] != null && !v[4].isEmpty()) {
+                    property.applyAvailable(Boolean.parseBoolean(v[4]));
+                }
+                boolean hasLatitude = v[6] != null && !v[6].isEmpty();
+                if (hasLatitude != (v[7] != null && !v[7].isEmpty())) {
+                    throw new IllegalArgumentException("Latitude and longitude must be given together");
+                }
+                if (hasLatitude) {
+                    double latitude = decimal(v, 6);
+                    double longitude = decimal(v, 7);
+                    GeoIndex.checkCoordinates(latitude, longitude);
+                    property.applyCoordinates(latitude, longitude);
+                }
+                return property;
+            }
+            case SELLERS:
+                return new Seller(positive(v, 0), v[1], v[2], v[3], v[4] == null ? "" : v[4],
+                        v[5] == null || v[5].isEmpty() ? 0 : number(v, 5));
+            case BUYERS:
+                return new Buyer(positive(v, 0), v[1], v[2], v[3], v[4] == null || v[4].isEmpty() ? 0 : number(v, 4),
+                        v[5] == null ? "" : v[5]);
+            default:
+                return new Booking(positive(v, 0), number(v, 1),
+                        v[4] == null || v[4].isEmpty() ? LocalDate.now().toString() : v[4], v[2], v[3],
+                        v[5] == null || v[5].isEmpty() ? 0 : positive(v, 5));
+        }
+    }
+
+    private static int number(String[] values, int column) {
+        try {
+            return Integer.parseInt(values[column].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + values[column]);
+        }
+    }
+
+    private static double decimal(String[] values, int column) {
+        try {
+            return Double.parseDouble(values[column].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + values[column]);
+        }
+    }
+
+    private static int positive(String[] values, int column) {
+        int id = number(values, column);
+        if (id <= 0) {
+            throw new IllegalArgumentException("IDs must be positive: " + id);
+        }
+        return id;
+    }
+
+    // Validates a parsed chunk against the system and attaches and journals it as one batch. The calendar
+    // stripes of the chunk's properties are held until the batch is durable, as the live operations hold
+    // a property's stripe across its journal write, so no booking or update on them is journaled ahead of
+    // the batch. If the journal write fails, the batch is detached again before the error is thrown.
+    private void apply(Kind kind, Chunk chunk, ImportResult result) throws IOException {
+        long start = System.nanoTime();
+        long imported = result.getImported();
+        StringBuilder journal = new StringBuilder();
+        List<Runnable> undo = new ArrayList<>();
+        List<Property> added = new ArrayList<>();
+        pms.mutateProperties(propertyIds(chunk), () -> {
+            switch (kind) {
+                case PROPERTIES:
+                    applyProperties(chunk, result, journal, undo, added);
+                    break;
+                case SELLERS:
+                case BUYERS:
+                    applyUsers(chunk, result, journal, undo);
+                    break;
+                default:
+                    applyBookings(chunk, result, journal, undo);
+                    break;
+            }
+            String file = kind == Kind.PROPERTIES ? FileUtils.PROPERTIES_FILE
+                    : kind == Kind.BOOKINGS ? FileUtils.BOOKINGS_FILE : FileUtils.USERS_FILE;
+            if (journal.length() > 0) {
+                journal.setLength(journal.length() - 1);
+                Journal log = Journal.forFile(pms.logFile(file));
+                try {
+                    log.awaitDurable(log.append(journal.toString()));
+                } catch (IOException | RuntimeException e) {
+                    for (int i = undo.size() - 1; i >= 0; i--) {
+                        undo.get(i).run();
+                    }
+                    throw e;
+                }
+            }
+        });
+        for (Property property : added) {
+            pms.getListingMatcher().listingAdded(property);
+        }
+        ROWS.add(result.getImported() - imported);
+        BATCH.recordSince(start);
+    }
+
+    // Properties the chunk's listings and bookings belong to
+    private static int[] propertyIds(Chunk chunk) {
+        int[] ids = new int[chunk.items.length];
+        int count = 0;
+        for (Object item : chunk.items) {
+            if (item instanceof Property) {
+                ids[count++] = ((Property) item).getPropertyId();
+            } else if (item instanceof Booking) {
+                ids[count++] = ((Booking) item).getPropertyId();
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    // False for blank lines and for lines that failed to parse, which are rejected here so errors stay in line order
+    private static boolean parsed(Chunk chunk, int i, ImportResult result) {
+        if (chunk.items[i] != null) {
+            return true;
+        }
+        if (!chunk.errors[i].isEmpty()) {
+            result.rejected(chunk.firstLine + i, chunk.errors[i]);
+        }
+        return false;
+    }
+
+    // Ids are checked against the catalog by attachProperties under the catalog lock, so a clash with a
+    // property added concurrently rejects that row only. Outcomes are reported afterwards, in line order.
+    private void applyProperties(Chunk chunk, ImportResult result, StringBuilder journal, List<Runnable> undo,
+            List<Property> added) {
+        List<Property> batch = new ArrayList<>(chunk.items.length);
+        Seller[] owners = new Seller[chunk.items.length];
+        String[] reasons = new String[chunk.items.length];
+        Map<String, Seller> sellers = new HashMap<>();
+        for (int i = 0; i < chunk.items.length; i++) {
+            if (chunk.items[i] == null) {
+                continue;
+            }
+            Property property = (Property) chunk.items[i];
+            String sellerName = chunk.extras[i];
+            if (sellerName != null) {
+                owners[i] = sellers.computeIfAbsent(sellerName, name -> {
+                    User user = pms.findUser(name);
+                    return user instanceof Seller ? (Seller) user : null;
+                });
+                if (owners[i] == null) {
+                    reasons[i] = "Unknown seller: " + sellerName;
+                    continue;
+                }
+            }
+            batch.add(property);
+        }
+        Set<Property> clashing = Collections.newSetFromMap(new IdentityHashMap<>());
+        clashing.addAll(pms.attachProperties(batch));
+        for (Property property : batch) {
+            if (!clashing.contains(property)) {
+                undo.add(() -> pms.detachProperty(property.getPropertyId()));
+            }
+        }
+        for (int i = 0; i < chunk.items.length; i++) {
+            if (!parsed(chunk, i, result)) {
+                continue;
+            }
+            Property property = (Property) chunk.items[i];
+            long line = chunk.firstLine + i;
+            if (reasons[i] != null) {
+                result.rejected(line, reasons[i]);
+                continue;
+            }
+            if (clashing.contains(property)) {
+                result.rejected(line, "Property ID already exists: " + property.getPropertyId());
+                continue;
+            }
+            journal.append(Records.propertyAdded(property)).append('\n');
+            Seller owner = owners[i];
+            if (owner != null) {
+                owner.attachListing(property.getPropertyId());
+                undo.add(() -> owner.detachListing(property.getPropertyId()));
+                journal.append(Records.encode(Records.LISTING_ADDED, owner.getUserId(), property.getPropertyId())).append('\n');
+            }
+            added.add(property);
+            result.accepted();
+        }
+    }
+
+    private void applyUsers(Chunk chunk, ImportResult result, StringBuilder journal, List<Runnable> undo) {
+        for (int i = 0; i < chunk.items.length; i++) {
+            if (!parsed(chunk, i, result)) {
+                continue;
+            }
+            User user = (User) chunk.items[i];
+            long line = chunk.firstLine + i;
+            if (userIds.contains(user.getUserId())) {
+                result.rejected(line, "User ID already exists: " + user.getUserId());
+                continue;
+            }
+            try {
+                pms.attachUser(user);
+            } catch (IllegalArgumentException e) {
+                result.rejected(line, e.getMessage());
+                continue;
+            }
+            userIds.add(user.getUserId());
+            undo.add(() -> {
+                pms.detachUser(user);
+                userIds.remove(user.getUserId());
+            });
+            if (user instanceof Seller) {
+                Seller seller = (Seller) user;
+                journal.append(Records.encode(Records.SELLER_REGISTERED, seller.getUserId(), seller.getUsername(),
+                        seller.getEmail(), seller.getPassword(), seller.getContactInfo(), seller.getRating()));
+            } else {
+                Buyer buyer = (Buyer) user;
+                journal.append(Records.encode(Records.BUYER_REGISTERED, buyer.getUserId(), buyer.getUsername(),
+                        buyer.getEmail(), buyer.getPassword(), buyer.getBudgetRange(), buyer.getLocationWanted()));
+            }
+            journal.append('\n');
+            result.accepted();
+        }
+    }
+
+    // Runs under the calendar stripes of the chunk's properties, like processBooking under one stripe
+    private void applyBookings(Chunk chunk, ImportResult result, StringBuilder journal, List<Runnable> undo) {
+        for (int i = 0; i < chunk.items.length; i++) {
+            if (!parsed(chunk, i, result)) {
+                continue;
+            }
+            Booking booking = (Booking) chunk.items[i];
+            long line = chunk.firstLine + i;
+            if (!pms.containsProperty(booking.getPropertyId())) {
+                result.rejected(line, "Unknown property: " + booking.getPropertyId());
+                continue;
+            }
+            if (!pms.attachBooking(booking)) {
+                result.rejected(line, "Booking ID taken or dates overlap: " + booking.getBookingId());
+                continue;
+            }
+            undo.add(() -> pms.detachBooking(booking));
+            journal.append(Records.bookingConfirmed(booking)).append('\n');
+            result.accepted();
+        }
+    }
+
+    private static String[] csvValues(int[] columnMap, Kind kind, String line) {
+        List<String> fields = splitCsv(line);
+        String[] values = new String[kind.columns.length];
+        for (int i = 0; i < fields.size() && i < columnMap.length; i++) {
+            if (columnMap[i] >= 0) {
+                values[columnMap[i]] = fields.get(i);
+            }
+        }
+        return values;
+    }
+
+    // RFC 4180 fields on one line: commas separate, quoted fields may hold commas and "" for a quote
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // Flat JSON object: string, number, boolean or null values; unknown keys are ignored
+    private static String[] jsonValues(Kind kind, String line) {
+        String[] values = new String[kind.columns.length];
+        int[] pos = {skipSpace(line, 0)};
+        expect(line, pos, '{');
+        if (peek(line, pos) == '}') {
+            return values;
+        }
+        while (true) {
+            String key = jsonString(line, pos);
+            expect(line, pos, ':');
+            String value = jsonValue(line, pos);
+            int column = kind.column(key);
+            if (column >= 0) {
+                values[column] = value;
+            }
+            char c = peek(line, pos);
+            pos[0]++;
+            if (c == '}') {
+                return values;
+            }
+            if (c != ',') {
+                throw new IllegalArgumentException("Malformed JSON at column " + pos[0]);
+            }
+        }
+    }
+
+    private static int skipSpace(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static char peek(String s, int[] pos) {
+        pos[0] = skipSpace(s, pos[0]);
+        if (pos[0] >= s.length()) {
+            throw new IllegalArgumentException("Unexpected end of JSON");
+        }
+        return s.charAt(pos[0]);
+    }
+
+    private static void expect(String s, int[] pos, char c) {
+        if (peek(s, pos) != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' at column " + (pos[0] + 1));
+        }
+        pos[0]++;
+    }
+
+    private static String jsonValue(String s, int[] pos) {
+        char c = peek(s, pos);
+        if (c == '"') {
+            return jsonString(s, pos);
+        }
+        int start = pos[0];
+        while (pos[0] < s.length() && ",}".indexOf(s.charAt(pos[0])) < 0 && !Character.isWhitespace(s.charAt(pos[0]))) {
+            pos[0]++;
+        }
+        String literal = s.substring(start, pos[0]);
+        if (literal.equals("null")) {
+            return null;
+        }
+        if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+            throw new IllegalArgumentException("Unsupported JSON value at column " + (start + 1));
+        }
+        return literal;
+    }
+
+    private static String jsonString(String s, int[] pos) {
+        expect(s, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        int i = pos[0];
+        while (i < s.length()) {
+            char c = s.charAt(i++);
+            if (c == '"') {
+                pos[0] = i;
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= s.length()) {
+                break;
+            }
+            char e = s.charAt(i++);
+            switch (e) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (i + 4 > s.length()) {
+                        throw new IllegalArgumentException("Bad unicode escape");
+                    }
+                    sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    i += 4;
+                    break;
+                default:
+                    sb.append(e);
+                    break;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON string");
+    }
+}
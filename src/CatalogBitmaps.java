@@ -0,0 +1,109 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// Property ids as compressed bitmaps: every id, the available set, and membership by exact lower-cased
+// type and by exact lower-cased location. Filters over them and over id sets such as a wishlist are
+// word-wide bitmap intersections. Callers hold the catalog lock, as for the other listeners.
+class CatalogBitmaps implements CatalogListener {
+    private final IntBitmap all = new IntBitmap();
+    private final IntBitmap available = new IntBitmap();
+    private final Map<String, IntBitmap> byType = new HashMap<>();
+    private final Map<String, IntBitmap> byLocation = new HashMap<>();
+
+    @Override
+    public void propertyAdded(Property property) {
+        int id = property.getPropertyId();
+        all.add(id);
+        if (property.isAvailable()) {
+            available.add(id);
+        }
+        add(byType, property.getType(), id);
+        add(byLocation, property.getLocation(), id);
+    }
+
+    @Override
+    public void propertyRemoved(Property property) {
+        int id = property.getPropertyId();
+        all.remove(id);
+        available.remove(id);
+        remove(byType, property.getType(), id);
+        remove(byLocation, property.getLocation(), id);
+    }
+
+    @Override
+    public void propertyUpdated(Property property, String oldLocation, int oldPrice, String oldType) {
+        int id = property.getPropertyId();
+        remove(byType, oldType, id);
+        add(byType, property.getType(), id);
+        remove(byLocation, oldLocation, id);
+        add(byLocation, property.getLocation(), id);
+    }
+
+    @Override
+    public void availabilityChanged(Property property) {
+        if (property.isAvailable()) {
+            available.add(property.getPropertyId());
+        } else {
+            available.remove(property.getPropertyId());
+        }
+    }
+
+    public boolean isAvailable(int propertyId) {
+        return available.contains(propertyId);
+    }
+
+    public int availableCount() {
+        return available.cardinality();
+    }
+
+    // The ids that are still available
+    public IntBitmap available(IntBitmap ids) {
+        return IntBitmap.and(ids, available);
+    }
+
+    // Ids with exactly this type and location (case-insensitive); null matches any, and ids limits the
+    // result to a given set when not null
+    public IntBitmap filter(IntBitmap ids, String location, String type, boolean availableOnly) {
+        IntBitmap result = ids;
+        if (type != null) {
+            result = intersect(result, byType.get(type.toLowerCase()));
+        }
+        if (location != null) {
+            result = intersect(result, byLocation.get(location.toLowerCase()));
+        }
+        if (availableOnly) {
+            result = intersect(result, available);
+        }
+        return result == null ? all.copy() : result == ids ? ids.copy() : result;
+    }
+
+    public long sizeInBytes() {
+        long bytes = all.sizeInBytes() + available.sizeInBytes();
+        for (IntBitmap bitmap : byType.values()) {
+            bytes += bitmap.sizeInBytes();
+        }
+        for (IntBitmap bitmap : byLocation.values()) {
+            bytes += bitmap.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    private static IntBitmap intersect(IntBitmap result, IntBitmap members) {
+        if (members == null) {
+            return new IntBitmap();
+        }
+        return result == null ? members.copy() : IntBitmap.and(result, members);
+    }
+
+    private static void add(Map<String, IntBitmap> index, String key, int id) {
+        index.computeIfAbsent(key.toLowerCase(), k -> new IntBitmap()).add(id);
+    }
+
+    private static void remove(Map<String, IntBitmap> index, String key, int id) {
+        String lower = key.toLowerCase();
+        IntBitmap members = index.get(lower);
+        if (members != null && members.remove(id) && members.isEmpty()) {
+            index.remove(lower);
+        }
+    }
+}
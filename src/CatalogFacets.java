@@ -0,0 +1,345 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Listing counts and price sums per type and per location (case-insensitive), for all listings and for
+// the available ones, plus a price histogram. Each catalog change adjusts a handful of counters, so
+// facets for a dashboard or beside search results never rescan the catalog. The available listings'
+// prices are also kept sorted, so their bounds need no scan either. Bucket boundaries come
+// from facets.priceBuckets, a comma-separated list of ascending prices. Callers hold the catalog lock,
+// as for the other listeners.
+class CatalogFacets implements CatalogListener {
+    private static final int[] DEFAULT_BUCKETS = {100_000, 200_000, 300_000, 500_000, 750_000, 1_000_000, 1_500_000, 2_000_000};
+
+    // Counts for one type or location, or for the whole catalog
+    static class Facet {
+        private final String name;
+        private int count;
+        private int available;
+        private long priceSum;
+        private long availablePriceSum;
+
+        Facet(String name) {
+            this.name = name;
+        }
+
+        private Facet(Facet other) {
+            this(other.name);
+            add(other);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getAvailable() {
+            return available;
+        }
+
+        public double getAveragePrice() {
+            return count == 0 ? 0 : (double) priceSum / count;
+        }
+
+        public double getAverageAvailablePrice() {
+            return available == 0 ? 0 : (double) availablePriceSum / available;
+        }
+
+        private void add(Facet other) {
+            count += other.count;
+            available += other.available;
+            priceSum += other.priceSum;
+            availablePriceSum += other.availablePriceSum;
+        }
+    }
+
+    // A point-in-time copy of the aggregates. Price bounds are only meaningful when the matching count
+    // is non-zero.
+    static class Summary {
+        private final Facet total;
+        private final List<Facet> types;
+        private final List<Facet> locations;
+        private final int minPrice;
+        private final int maxPrice;
+        private final int minAvailablePrice;
+        private final int maxAvailablePrice;
+        private final int[] bucketBounds;
+        private final long[] buckets;
+        private final long[] availableBuckets;
+
+        Summary(Facet total, List<Facet> types, List<Facet> locations, int[] priceBounds, int[] availablePriceBounds,
+                int[] bucketBounds, long[] buckets, long[] availableBuckets) {
+            this.total = total;
+            this.types = types;
+            this.locations = locations;
+            this.minPrice = priceBounds == null ? 0 : priceBounds[0];
+            this.maxPrice = priceBounds == null ? 0 : priceBounds[1];
+            this.minAvailablePrice = availablePriceBounds == null ? 0 : availablePriceBounds[0];
+            this.maxAvailablePrice = availablePriceBounds == null ? 0 : availablePriceBounds[1];
+            this.bucketBounds = bucketBounds;
+            this.buckets = buckets;
+            this.availableBuckets = availableBuckets;
+        }
+
+        public Facet getTotal() {
+            return total;
+        }
+
+        // Largest first
+        public List<Facet> getTypes() {
+            return types;
+        }
+
+        // Largest first
+        public List<Facet> getLocations() {
+            return locations;
+        }
+
+        public int getMinPrice() {
+            return minPrice;
+        }
+
+        public int getMaxPrice() {
+            return maxPrice;
+        }
+
+        public int getMinAvailablePrice() {
+            return minAvailablePrice;
+        }
+
+        public int getMaxAvailablePrice() {
+            return maxAvailablePrice;
+        }
+
+        // Bucket i holds prices from bound i - 1 (inclusive) up to bound i (exclusive); the last bucket
+        // is open-ended, so there is one more bucket than there are bounds
+        public int[] getBucketBounds() {
+            return bucketBounds.clone();
+        }
+
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        public long[] getAvailableBuckets() {
+            return availableBuckets.clone();
+        }
+
+        // Combines the summaries of disjoint catalogs, such as shards
+        static Summary merge(List<Summary> summaries) {
+            Summary first = summaries.get(0);
+            Facet total = new Facet(first.total.name);
+            Map<String, Facet> types = new LinkedHashMap<>();
+            Map<String, Facet> locations = new LinkedHashMap<>();
+            int[] priceBounds = null;
+            int[] availablePriceBounds = null;
+            long[] buckets = new long[first.buckets.length];
+            long[] availableBuckets = new long[first.availableBuckets.length];
+            for (Summary summary : summaries) {
+                total.add(summary.total);
+                merge(types, summary.types);
+                merge(locations, summary.locations);
+                if (summary.total.count > 0) {
+                    priceBounds = widen(priceBounds, summary.minPrice, summary.maxPrice);
+                }
+                if (summary.total.available > 0) {
+                    availablePriceBounds = widen(availablePriceBounds, summary.minAvailablePrice, summary.maxAvailablePrice);
+                }
+                for (int i = 0; i < buckets.length; i++) {
+                    buckets[i] += summary.buckets[i];
+                    availableBuckets[i] += summary.availableBuckets[i];
+                }
+            }
+            return new Summary(total, sorted(types.values()), sorted(locations.values()), priceBounds,
+                    availablePriceBounds, first.bucketBounds, buckets, availableBuckets);
+        }
+
+        private static void merge(Map<String, Facet> merged, List<Facet> facets) {
+            for (Facet facet : facets) {
+                merged.computeIfAbsent(facet.name.toLowerCase(), k -> new Facet(facet.name)).add(facet);
+            }
+        }
+
+        private static int[] widen(int[] bounds, int min, int max) {
+            return bounds == null ? new int[] {min, max} : new int[] {Math.min(bounds[0], min), Math.max(bounds[1], max)};
+        }
+    }
+
+    private static final Comparator<Facet> LARGEST_FIRST = Comparator.comparingInt((Facet facet) -> -facet.count)
+            .thenComparing(facet -> facet.name);
+
+    private final Facet total = new Facet("All");
+    private final Map<String, Facet> byType = new HashMap<>();
+    private final Map<String, Facet> byLocation = new HashMap<>();
+    private final int[] bucketBounds;
+    private final long[] buckets;
+    private final long[] availableBuckets;
+    private final PriceIndex availablePrices = new PriceIndex();
+
+    public CatalogFacets() {
+        this(bucketBounds(System.getProperty("facets.priceBuckets")));
+    }
+
+    public CatalogFacets(int[] bucketBounds) {
+        if (bucketBounds.length == 0) {
+            throw new IllegalArgumentException("At least one price bucket bound is needed");
+        }
+        for (int i = 1; i < bucketBounds.length; i++) {
+            if (bucketBounds[i] <= bucketBounds[i - 1]) {
+                throw new IllegalArgumentException("Price buckets must be ascending: " + Arrays.toString(bucketBounds));
+            }
+        }
+        this.bucketBounds = bucketBounds.clone();
+        this.buckets = new long[bucketBounds.length + 1];
+        this.availableBuckets = new long[bucketBounds.length + 1];
+    }
+
+    private static int[] bucketBounds(String property) {
+        if (property == null || property.trim().isEmpty()) {
+            return DEFAULT_BUCKETS;
+        }
+        String[] parts = property.split(",");
+        int[] bounds = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            bounds[i] = Integer.parseInt(parts[i].trim());
+        }
+        return bounds;
+    }
+
+    @Override
+    public void propertyAdded(Property property) {
+        adjust(property.getType(), property.getLocation(), property.getPrice(), property.isAvailable(), 1);
+        if (property.isAvailable()) {
+            availablePrices.add(property.getPrice(), property.getPropertyId());
+        }
+    }
+
+    // Merges the batch's available prices in one pass, as PriceIndex does for the whole catalog
+    @Override
+    public void propertiesAdded(List<Property> properties) {
+        List<Property> available = new ArrayList<>(properties.size());
+        for (Property property : properties) {
+            adjust(property.getType(), property.getLocation(), property.getPrice(), property.isAvailable(), 1);
+            if (property.isAvailable()) {
+                available.add(property);
+            }
+        }
+        availablePrices.propertiesAdded(available);
+    }
+
+    @Override
+    public void propertyRemoved(Property property) {
+        adjust(property.getType(), property.getLocation(), property.getPrice(), property.isAvailable(), -1);
+        if (property.isAvailable()) {
+            availablePrices.remove(property.getPrice(), property.getPropertyId());
+        }
+    }
+
+    @Override
+    public void propertyUpdated(Property property, String oldLocation, int oldPrice, String oldType) {
+        adjust(oldType, oldLocation, oldPrice, property.isAvailable(), -1);
+        adjust(property.getType(), property.getLocation(), property.getPrice(), property.isAvailable(), 1);
+        if (property.isAvailable() && oldPrice != property.getPrice()) {
+            availablePrices.remove(oldPrice, property.getPropertyId());
+            availablePrices.add(property.getPrice(), property.getPropertyId());
+        }
+    }
+
+    @Override
+    public void availabilityChanged(Property property) {
+        int sign = property.isAvailable() ? 1 : -1;
+        int price = property.getPrice();
+        adjustAvailable(total, price, sign);
+        adjustAvailable(facet(byType, property.getType()), price, sign);
+        adjustAvailable(facet(byLocation, property.getLocation()), price, sign);
+        availableBuckets[bucket(price)] += sign;
+        if (sign > 0) {
+            availablePrices.add(price, property.getPropertyId());
+        } else {
+            availablePrices.remove(price, property.getPropertyId());
+        }
+    }
+
+    // priceBounds is the whole catalog's {min, max}, or null when it is empty
+    public Summary summary(int[] priceBounds) {
+        return new Summary(new Facet(total), copy(byType), copy(byLocation), priceBounds,
+                availablePrices.priceBounds(), bucketBounds.clone(), buckets.clone(), availableBuckets.clone());
+    }
+
+    public int typeCount() {
+        return byType.size();
+    }
+
+    public int locationCount() {
+        return byLocation.size();
+    }
+
+    private void adjust(String type, String location, int price, boolean available, int sign) {
+        adjust(total, price, available, sign);
+        adjust(facet(byType, type), price, available, sign);
+        adjust(facet(byLocation, location), price, available, sign);
+        int bucket = bucket(price);
+        buckets[bucket] += sign;
+        if (available) {
+            availableBuckets[bucket] += sign;
+        }
+        if (sign < 0) {
+            prune(byType, type);
+            prune(byLocation, location);
+        }
+    }
+
+    private static void adjust(Facet facet, int price, boolean available, int sign) {
+        facet.count += sign;
+        facet.priceSum += (long) sign * price;
+        if (available) {
+            adjustAvailable(facet, price, sign);
+        }
+    }
+
+    private static void adjustAvailable(Facet facet, int price, int sign) {
+        facet.available += sign;
+        facet.availablePriceSum += (long) sign * price;
+    }
+
+    private int bucket(int price) {
+        int index = Arrays.binarySearch(bucketBounds, price);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    // The first spelling seen names the facet
+    private static Facet facet(Map<String, Facet> facets, String value) {
+        return facets.computeIfAbsent(value.toLowerCase(), k -> new Facet(value));
+    }
+
+    private static void prune(Map<String, Facet> facets, String value) {
+        String key = value.toLowerCase();
+        Facet facet = facets.get(key);
+        if (facet != null && facet.count == 0) {
+            facets.remove(key);
+        }
+    }
+
+    private static List<Facet> copy(Map<String, Facet> facets) {
+        List<Facet> copies = new ArrayList<>(facets.size());
+        for (Facet facet : facets.values()) {
+            copies.add(new Facet(facet));
+        }
+        copies.sort(LARGEST_FIRST);
+        return copies;
+    }
+
+    private static List<Facet> sorted(Collection<Facet> facets) {
+        List<Facet> list = new ArrayList<>(facets);
+        list.sort(LARGEST_FIRST);
+        return list;
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Interns strings to dense int codes. Codes are never reclaimed, so the dictionary grows with the number of
+// distinct values ever stored, not with the number of rows.
+class StringDictionary {
+    private final Map<String, Integer> codes = new HashMap<>();
+    // Slots are filled before their code is handed out and the array is republished after each write, so
+    // unlocked readers holding a code always find its value
+    private volatile String[] values = new String[16];
+    private int size;
+
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = size;
+            String[] current = size == values.length ? Arrays.copyOf(values, size * 2) : values;
+            current[size++] = value;
+            values = current;
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    public String decode(int code) {
+        return values[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long estimatedBytes() {
+        long bytes = 4L * values.length;
+        for (int code = 0; code < size; code++) {
+            bytes += 2L * values[code].length() + 40 + 48;
+        }
+        return bytes;
+    }
+}
+
+// Struct-of-arrays storage for the listings of one system. Price, the dictionary codes of location and
+// type, availability bits and coordinates live in primitive columns, one row per listing; a Property in
+// the system is a view that reads and writes its row. Rows of removed listings are reused by later ones.
+// Writers hold the catalog write lock. Readers may go without it, as they could read the old per-object
+// fields: a concurrent change can be seen partly applied, but the columns only ever grow.
+class ColumnarPropertyStore {
+    private final StringDictionary locations = new StringDictionary();
+    private final StringDictionary types = new StringDictionary();
+    private int[] prices = new int[16];
+    private int[] locationCodes = new int[16];
+    private int[] typeCodes = new int[16];
+    private long[] availableBits = new long[1];
+    // NaN when the listing has no coordinates
+    private double[] latitudes = new double[16];
+    private double[] longitudes = new double[16];
+    private int[] freeRows = new int[16];
+    private int freeCount;
+    private int rows;
+
+    // Stores a listing's values and returns its row
+    public int add(String location, int price, String type, boolean available, double latitude, double longitude) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            if (rows == prices.length) {
+                int capacity = rows * 2;
+                prices = Arrays.copyOf(prices, capacity);
+                locationCodes = Arrays.copyOf(locationCodes, capacity);
+                typeCodes = Arrays.copyOf(typeCodes, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                availableBits = Arrays.copyOf(availableBits, (capacity + 63) >>> 6);
+            }
+            row = rows++;
+        }
+        update(row, location, price, type);
+        setAvailable(row, available);
+        setCoordinates(row, latitude, longitude);
+        return row;
+    }
+
+    public void release(int row) {
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+        }
+        freeRows[freeCount++] = row;
+    }
+
+    public int size() {
+        return rows - freeCount;
+    }
+
+    public String location(int row) {
+        return locations.decode(locationCodes[row]);
+    }
+
+    public int price(int row) {
+        return prices[row];
+    }
+
+    public String type(int row) {
+        return types.decode(typeCodes[row]);
+    }
+
+    public boolean isAvailable(int row) {
+        return (availableBits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public double latitude(int row) {
+        return latitudes[row];
+    }
+
+    public double longitude(int row) {
+        return longitudes[row];
+    }
+
+    public void update(int row, String location, int price, String type) {
+        locationCodes[row] = locations.encode(location);
+        prices[row] = price;
+        typeCodes[row] = types.encode(type);
+    }
+
+    public void setAvailable(int row, boolean available) {
+        if (available) {
+            availableBits[row >>> 6] |= 1L << row;
+        } else {
+            availableBits[row >>> 6] &= ~(1L << row);
+        }
+    }
+
+    public void setCoordinates(int row, double latitude, double longitude) {
+        latitudes[row] = latitude;
+        longitudes[row] = longitude;
+    }
+
+    // Rough heap footprint of the columns and dictionaries
+    public long estimatedBytes() {
+        long columns = 3L * 4 * prices.length + 2L * 8 * latitudes.length + 8L * availableBits.length
+                + 4L * freeRows.length;
+        return columns + locations.estimatedBytes() + types.estimatedBytes();
+    }
+}
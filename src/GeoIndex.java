@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+// Uniform grid over latitude and longitude for the properties that have coordinates. Cells are
+// geo.cellDegrees on a side (0.05, about 5.5 km north to south, by default). Radius and bounding-box
+// queries visit only the occupied cells overlapping the area, nearest cell first, and stop once the
+// nearest limit matches are closer than anything a remaining cell could hold.
+// Callers hold the catalog lock, as for the other listeners.
+class GeoIndex implements CatalogListener {
+    static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+    // No two points are further apart than half the circumference
+    private static final double MAX_DISTANCE_KM = Math.PI * EARTH_RADIUS_KM;
+
+    // A match and its distance from the query point
+    private static class Hit {
+        final Property property;
+        final double distanceKm;
+
+        Hit(Property property, double distanceKm) {
+            this.property = property;
+            this.distanceKm = distanceKm;
+        }
+    }
+
+    private static final Comparator<Hit> NEAREST = Comparator.<Hit>comparingDouble(hit -> hit.distanceKm)
+            .thenComparingInt(hit -> hit.property.getPropertyId());
+
+    private final int lonCells;
+    private final int latCells;
+    private final double cellDegrees;
+    private final Map<Long, List<Property>> cells = new HashMap<>();
+    private int size;
+
+    public GeoIndex() {
+        this(Double.parseDouble(System.getProperty("geo.cellDegrees", "0.05")));
+    }
+
+    // The cell size is rounded so a whole number of cells spans 360 degrees
+    public GeoIndex(double cellDegrees) {
+        if (!(cellDegrees > 0 && cellDegrees <= 90)) {
+            throw new IllegalArgumentException("Cell size must be in (0, 90] degrees: " + cellDegrees);
+        }
+        this.lonCells = (int) Math.round(360 / cellDegrees);
+        this.cellDegrees = 360.0 / lonCells;
+        this.latCells = (int) Math.ceil(180 / this.cellDegrees);
+    }
+
+    @Override
+    public void propertyAdded(Property property) {
+        if (property.hasCoordinates()) {
+            add(property, property.getLatitude(), property.getLongitude());
+        }
+    }
+
+    @Override
+    public void propertyRemoved(Property property) {
+        if (property.hasCoordinates()) {
+            remove(property, property.getLatitude(), property.getLongitude());
+        }
+    }
+
+    @Override
+    public void propertyUpdated(Property property, String oldLocation, int oldPrice, String oldType) {
+    }
+
+    @Override
+    public void coordinatesChanged(Property property, double oldLatitude, double oldLongitude) {
+        if (!Double.isNaN(oldLatitude)) {
+            remove(property, oldLatitude, oldLongitude);
+        }
+        propertyAdded(property);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int cellCount() {
+        return cells.size();
+    }
+
+    // Matches within radiusKm of the point, nearest first, up to limit. A radius past half the circumference
+    // covers the whole globe and is searched as one.
+    public List<Property> nearby(double latitude, double longitude, double radiusKm, Predicate<Property> filter,
+            int limit) {
+        checkCoordinates(latitude, longitude);
+        checkRadius(radiusKm);
+        double latDelta = Math.min(Math.min(radiusKm, MAX_DISTANCE_KM) / KM_PER_DEGREE, 180);
+        double maxAbsLat = Math.min(90, Math.abs(latitude) + latDelta);
+        double cos = Math.cos(Math.toRadians(maxAbsLat));
+        double lonDelta = cos < 1e-9 ? 180 : Math.min(180, latDelta / cos);
+        return search(latitude, longitude, latitude - latDelta, latitude + latDelta, longitude - lonDelta,
+                longitude + lonDelta,
+                property -> distanceKm(latitude, longitude, property.getLatitude(), property.getLongitude()) <= radiusKm,
+                filter, limit);
+    }
+
+    // Matches inside the box, nearest its centre first, up to limit. A box with minLongitude greater than
+    // maxLongitude wraps across the antimeridian.
+    public List<Property> withinBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+            Predicate<Property> filter, int limit) {
+        checkCoordinates(minLatitude, minLongitude);
+        checkCoordinates(maxLatitude, maxLongitude);
+        double east = maxLongitude < minLongitude ? maxLongitude + 360 : maxLongitude;
+        return search((minLatitude + maxLatitude) / 2, boxCenterLongitude(minLongitude, maxLongitude),
+                minLatitude, maxLatitude, minLongitude, east, property -> {
+                    double lat = property.getLatitude();
+                    double lon = property.getLongitude();
+                    if (lon < minLongitude) {
+                        lon += 360;
+                    }
+                    return lat >= minLatitude && lat <= maxLatitude && lon <= east;
+                }, filter, limit);
+    }
+
+    static double boxCenterLongitude(double minLongitude, double maxLongitude) {
+        double east = maxLongitude < minLongitude ? maxLongitude + 360 : maxLongitude;
+        double center = (minLongitude + east) / 2;
+        return center > 180 ? center - 360 : center;
+    }
+
+    // Great-circle distance by the haversine formula
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    static void checkCoordinates(double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Coordinates out of range: " + latitude + ", " + longitude);
+        }
+    }
+
+    static void checkRadius(double radiusKm) {
+        if (!(radiusKm >= 0) || Double.isInfinite(radiusKm)) {
+            throw new IllegalArgumentException("Radius must be a finite, non-negative number of km: " + radiusKm);
+        }
+    }
+
+    // Best-first over the occupied cells in the latitude and (unwrapped) longitude range, ordered by the
+    // distance from the centre to the nearest point of each cell
+    private List<Property> search(double centerLat, double centerLon, double south, double north, double west,
+            double east, Predicate<Property> inArea, Predicate<Property> filter, int limit) {
+        if (limit <= 0 || cells.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int firstRow = latRow(Math.max(-90, south));
+        int lastRow = latRow(Math.min(90, north));
+        long firstColumn = (long) Math.floor((west + 180) / cellDegrees);
+        int columns = (int) Math.min(lonCells, (long) Math.floor((east + 180) / cellDegrees) - firstColumn + 1);
+
+        List<long[]> candidates = new ArrayList<>();
+        if ((long) (lastRow - firstRow + 1) * columns <= cells.size()) {
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int offset = 0; offset < columns; offset++) {
+                    long key = key(row, Math.floorMod(firstColumn + offset, lonCells));
+                    if (cells.containsKey(key)) {
+                        candidates.add(new long[] {key, row, firstColumn + offset});
+                    }
+                }
+            }
+        } else {
+            for (long key : cells.keySet()) {
+                int row = (int) (key / lonCells);
+                int offset = (int) Math.floorMod(key % lonCells - firstColumn, (long) lonCells);
+                if (row >= firstRow && row <= lastRow && offset < columns) {
+                    candidates.add(new long[] {key, row, firstColumn + offset});
+                }
+            }
+        }
+        double[] bounds = new double[candidates.size()];
+        Integer[] order = new Integer[candidates.size()];
+        for (int i = 0; i < order.length; i++) {
+            long[] cell = candidates.get(i);
+            bounds[i] = cellDistanceKm(centerLat, centerLon, (int) cell[1], cell[2]);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> bounds[i]));
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(NEAREST.reversed());
+        for (int i : order) {
+            if (best.size() == limit && bounds[i] > best.peek().distanceKm) {
+                break;
+            }
+            for (Property property : cells.get(candidates.get(i)[0])) {
+                if (!inArea.test(property) || !filter.test(property)) {
+                    continue;
+                }
+                Hit hit = new Hit(property, distanceKm(centerLat, centerLon, property.getLatitude(), property.getLongitude()));
+                if (best.size() < limit) {
+                    best.add(hit);
+                } else if (NEAREST.compare(hit, best.peek()) < 0) {
+                    best.poll();
+                    best.add(hit);
+                }
+            }
+        }
+        Hit[] hits = best.toArray(new Hit[0]);
+        Arrays.sort(hits, NEAREST);
+        List<Property> result = new ArrayList<>(hits.length);
+        for (Hit hit : hits) {
+            result.add(hit.property);
+        }
+        return result;
+    }
+
+    // Distance from the point to the nearest point of the cell; the column may be unwrapped
+    private double cellDistanceKm(double lat, double lon, int row, long column) {
+        double south = row * cellDegrees - 90;
+        double west = column * cellDegrees - 180;
+        double nearestLat = Math.max(south, Math.min(south + cellDegrees, lat));
+        double nearestLon = Math.max(west, Math.min(west + cellDegrees, lon));
+        return distanceKm(lat, lon, nearestLat, nearestLon);
+    }
+
+    private int latRow(double latitude) {
+        return Math.min(latCells - 1, (int) Math.floor((latitude + 90) / cellDegrees));
+    }
+
+    private long cellKey(double latitude, double longitude) {
+        return key(latRow(latitude), Math.floorMod((long) Math.floor((longitude + 180) / cellDegrees), lonCells));
+    }
+
+    private long key(int row, long column) {
+        return (long) row * lonCells + column;
+    }
+
+    private void add(Property property, double latitude, double longitude) {
+        cells.computeIfAbsent(cellKey(latitude, longitude), k -> new ArrayList<>(4)).add(property);
+        size++;
+    }
+
+    private void remove(Property property, double latitude, double longitude) {
+        long key = cellKey(latitude, longitude);
+        List<Property> members = cells.get(key);
+        if (members == null) {
+            return;
+        }
+        for (int i = 0; i < members.size(); i++) {
+            if (members.get(i) == property) {
+                members.set(i, members.get(members.size() - 1));
+                members.remove(members.size() - 1);
+                size--;
+                if (members.isEmpty()) {
+                    cells.remove(key);
+                }
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,447 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Compressed set of ints in the style of Roaring bitmaps: values are split by their high 16 bits into
+// containers holding the low 16 bits, either as a sorted array (up to 4096 values) or as a 1024-word
+// bitset. Sparse sets stay small and dense ones are combined 64 values per machine word.
+// Values iterate in unsigned order, which is ascending for non-negative ids. Not thread-safe.
+class IntBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    // Exactly one of values and words is set; a container is never empty
+    private static final class Container {
+        char[] values;
+        long[] words;
+        int cardinality;
+
+        static Container ofArray(char[] values, int cardinality) {
+            Container container = new Container();
+            container.values = values;
+            container.cardinality = cardinality;
+            return container;
+        }
+
+        static Container ofWords(long[] words, int cardinality) {
+            Container container = new Container();
+            container.words = words;
+            container.cardinality = cardinality;
+            return container.cardinality <= ARRAY_MAX ? container.toArrayContainer() : container;
+        }
+
+        Container copy() {
+            return words != null ? ofWords(words.clone(), cardinality)
+                    : ofArray(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        boolean contains(char low) {
+            if (words != null) {
+                return (words[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (words != null) {
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) != 0) {
+                    return false;
+                }
+                words[low >>> 6] |= bit;
+                cardinality++;
+                return true;
+            }
+            int pos = Arrays.binarySearch(values, 0, cardinality, low);
+            if (pos >= 0) {
+                return false;
+            }
+            pos = -pos - 1;
+            if (cardinality == ARRAY_MAX) {
+                toWordsContainer();
+                return add(low);
+            }
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, pos, values, pos + 1, cardinality - pos);
+            values[pos] = low;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (words != null) {
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) == 0) {
+                    return false;
+                }
+                words[low >>> 6] &= ~bit;
+                if (--cardinality <= ARRAY_MAX) {
+                    toArrayContainer();
+                }
+                return true;
+            }
+            int pos = Arrays.binarySearch(values, 0, cardinality, low);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(values, pos + 1, values, pos, cardinality - pos - 1);
+            cardinality--;
+            return true;
+        }
+
+        private void toWordsContainer() {
+            long[] bits = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            words = bits;
+            values = null;
+        }
+
+        private Container toArrayContainer() {
+            char[] array = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    array[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            values = array;
+            words = null;
+            return this;
+        }
+
+        void forEach(int high, IntConsumer action) {
+            if (words != null) {
+                for (int w = 0; w < WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) + Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    action.accept(high | values[i]);
+                }
+            }
+        }
+
+        long bytes() {
+            return 16 + (words != null ? 8L * WORDS : 2L * values.length);
+        }
+
+        // Null when the intersection is empty
+        static Container and(Container a, Container b) {
+            if (a.words != null && b.words != null) {
+                long[] result = new long[WORDS];
+                int count = 0;
+                for (int w = 0; w < WORDS; w++) {
+                    result[w] = a.words[w] & b.words[w];
+                    count += Long.bitCount(result[w]);
+                }
+                return count == 0 ? null : ofWords(result, count);
+            }
+            if (a.words != null || b.words != null) {
+                Container array = a.words != null ? b : a;
+                Container bits = a.words != null ? a : b;
+                char[] result = new char[array.cardinality];
+                int n = 0;
+                for (int i = 0; i < array.cardinality; i++) {
+                    if (bits.contains(array.values[i])) {
+                        result[n++] = array.values[i];
+                    }
+                }
+                return n == 0 ? null : ofArray(result, n);
+            }
+            char[] result = new char[Math.min(a.cardinality, b.cardinality)];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a.cardinality && j < b.cardinality) {
+                if (a.values[i] < b.values[j]) {
+                    i++;
+                } else if (a.values[i] > b.values[j]) {
+                    j++;
+                } else {
+                    result[n++] = a.values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return n == 0 ? null : ofArray(result, n);
+        }
+
+        static int andCardinality(Container a, Container b) {
+            if (a.words != null && b.words != null) {
+                int count = 0;
+                for (int w = 0; w < WORDS; w++) {
+                    count += Long.bitCount(a.words[w] & b.words[w]);
+                }
+                return count;
+            }
+            Container array = a.words != null ? b : a;
+            Container other = array == a ? b : a;
+            int count = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (other.contains(array.values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        static Container or(Container a, Container b) {
+            if (a.words != null || b.words != null || a.cardinality + b.cardinality > ARRAY_MAX) {
+                long[] result = a.words != null ? a.words.clone() : new long[WORDS];
+                if (a.words == null) {
+                    setAll(result, a);
+                }
+                if (b.words != null) {
+                    for (int w = 0; w < WORDS; w++) {
+                        result[w] |= b.words[w];
+                    }
+                } else {
+                    setAll(result, b);
+                }
+                int count = 0;
+                for (long word : result) {
+                    count += Long.bitCount(word);
+                }
+                return ofWords(result, count);
+            }
+            char[] result = new char[a.cardinality + b.cardinality];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a.cardinality || j < b.cardinality) {
+                if (j == b.cardinality || (i < a.cardinality && a.values[i] < b.values[j])) {
+                    result[n++] = a.values[i++];
+                } else if (i == a.cardinality || b.values[j] < a.values[i]) {
+                    result[n++] = b.values[j++];
+                } else {
+                    result[n++] = a.values[i++];
+                    j++;
+                }
+            }
+            return ofArray(result, n);
+        }
+
+        private static void setAll(long[] words, Container array) {
+            for (int i = 0; i < array.cardinality; i++) {
+                words[array.values[i] >>> 6] |= 1L << array.values[i];
+            }
+        }
+
+        // Null when nothing of a is left
+        static Container andNot(Container a, Container b) {
+            if (a.words != null) {
+                long[] result = a.words.clone();
+                if (b.words != null) {
+                    for (int w = 0; w < WORDS; w++) {
+                        result[w] &= ~b.words[w];
+                    }
+                } else {
+                    for (int i = 0; i < b.cardinality; i++) {
+                        result[b.values[i] >>> 6] &= ~(1L << b.values[i]);
+                    }
+                }
+                int count = 0;
+                for (long word : result) {
+                    count += Long.bitCount(word);
+                }
+                return count == 0 ? null : ofWords(result, count);
+            }
+            char[] result = new char[a.cardinality];
+            int n = 0;
+            for (int i = 0; i < a.cardinality; i++) {
+                if (!b.contains(a.values[i])) {
+                    result[n++] = a.values[i];
+                }
+            }
+            return n == 0 ? null : ofArray(result, n);
+        }
+    }
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    public IntBitmap() {
+    }
+
+    public static IntBitmap of(int... values) {
+        IntBitmap bitmap = new IntBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    public IntBitmap copy() {
+        IntBitmap copy = new IntBitmap();
+        copy.keys = Arrays.copyOf(keys, Math.max(4, size));
+        copy.containers = new Container[copy.keys.length];
+        for (int i = 0; i < size; i++) {
+            copy.containers[i] = containers[i].copy();
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    // Returns false if the value was already present
+    public boolean add(int value) {
+        char high = (char) (value >>> 16);
+        int pos = Arrays.binarySearch(keys, 0, size, high);
+        if (pos >= 0) {
+            return containers[pos].add((char) value);
+        }
+        insertContainer(-pos - 1, high, Container.ofArray(new char[] {(char) value}, 1));
+        return true;
+    }
+
+    // Returns false if the value was not present
+    public boolean remove(int value) {
+        int pos = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        if (pos < 0 || !containers[pos].remove((char) value)) {
+            return false;
+        }
+        if (containers[pos].cardinality == 0) {
+            System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+            System.arraycopy(containers, pos + 1, containers, pos, size - pos - 1);
+            containers[--size] = null;
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int pos = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return pos >= 0 && containers[pos].contains((char) value);
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += containers[i].cardinality;
+        }
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public int[] toArray() {
+        int[] result = new int[cardinality()];
+        int[] n = {0};
+        forEach(value -> result[n[0]++] = value);
+        return result;
+    }
+
+    // Approximate heap footprint, for gauges
+    public long sizeInBytes() {
+        long bytes = 32 + 2L * keys.length + 8L * containers.length;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].bytes();
+        }
+        return bytes;
+    }
+
+    public static IntBitmap and(IntBitmap a, IntBitmap b) {
+        IntBitmap result = new IntBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                Container container = Container.and(a.containers[i], b.containers[j]);
+                if (container != null) {
+                    result.appendContainer(a.keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Size of the intersection without materializing it
+    public static int andCardinality(IntBitmap a, IntBitmap b) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                count += Container.andCardinality(a.containers[i], b.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    public static IntBitmap or(IntBitmap a, IntBitmap b) {
+        IntBitmap result = new IntBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.appendContainer(a.keys[i], a.containers[i++].copy());
+            } else if (i == a.size || b.keys[j] < a.keys[i]) {
+                result.appendContainer(b.keys[j], b.containers[j++].copy());
+            } else {
+                result.appendContainer(a.keys[i], Container.or(a.containers[i++], b.containers[j++]));
+            }
+        }
+        return result;
+    }
+
+    // Values of a that are not in b
+    public static IntBitmap andNot(IntBitmap a, IntBitmap b) {
+        IntBitmap result = new IntBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            Container container = j < b.size && b.keys[j] == a.keys[i]
+                    ? Container.andNot(a.containers[i], b.containers[j]) : a.containers[i].copy();
+            if (container != null) {
+                result.appendContainer(a.keys[i], container);
+            }
+        }
+        return result;
+    }
+
+    private void insertContainer(int pos, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        System.arraycopy(containers, pos, containers, pos + 1, size - pos);
+        keys[pos] = key;
+        containers[pos] = container;
+        size++;
+    }
+
+    private void appendContainer(char key, Container container) {
+        insertContainer(size, key, container);
+    }
+}
@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Open-addressing map from primitive int keys to values, iterated in insertion order.
+// The hash table holds positions into dense key/value arrays; removed entries leave a hole
+// in the dense arrays until enough accumulate to compact them.
+class IntObjectMap<V> {
+    private int[] table;
+    private int[] keys;
+    private Object[] values;
+    private int next;
+    private int size;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        table = new int[capacity];
+        keys = new int[Math.max(4, expectedSize)];
+        values = new Object[keys.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V) values[table[slot] - 1];
+    }
+
+    // Values must be non-null; returns the previous value for key, if any
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        int slot = find(key);
+        if (slot >= 0) {
+            int entry = table[slot] - 1;
+            V previous = (V) values[entry];
+            values[entry] = value;
+            return previous;
+        }
+        if (next == keys.length) {
+            if (size < next / 2) {
+                compact();
+            } else {
+                keys = Arrays.copyOf(keys, next * 2);
+                values = Arrays.copyOf(values, next * 2);
+            }
+        }
+        if ((size + 1) * 4 > table.length * 3) {
+            table = new int[table.length * 2];
+            rehash();
+        }
+        keys[next] = key;
+        values[next] = value;
+        next++;
+        size++;
+        insertSlot(key, next);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        int entry = table[slot] - 1;
+        V previous = (V) values[entry];
+        values[entry] = null;
+        size--;
+        deleteSlot(slot);
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (int i = 0; i < next; i++) {
+            if (values[i] != null) {
+                action.accept((V) values[i]);
+            }
+        }
+    }
+
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        forEachValue(result::add);
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(values, 0, next, null);
+        next = 0;
+        size = 0;
+    }
+
+    private int find(int key) {
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[table[slot] - 1] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insertSlot(int key, int entryPlusOne) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entryPlusOne;
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones
+    private void deleteSlot(int slot) {
+        int mask = table.length - 1;
+        int hole = slot;
+        int cur = (slot + 1) & mask;
+        while (table[cur] != 0) {
+            int home = hash(keys[table[cur] - 1]) & mask;
+            if (((cur - home) & mask) >= ((cur - hole) & mask)) {
+                table[hole] = table[cur];
+                hole = cur;
+            }
+            cur = (cur + 1) & mask;
+        }
+        table[hole] = 0;
+    }
+
+    private void compact() {
+        int live = 0;
+        for (int i = 0; i < next; i++) {
+            if (values[i] != null) {
+                keys[live] = keys[i];
+                values[live] = values[i];
+                live++;
+            }
+        }
+        Arrays.fill(values, live, next, null);
+        next = live;
+        rehash();
+    }
+
+    private void rehash() {
+        Arrays.fill(table, 0);
+        for (int i = 0; i < next; i++) {
+            if (values[i] != null) {
+                insertSlot(keys[i], i + 1);
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
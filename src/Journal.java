@@ -0,0 +1,436 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fsync policy for a journal: force after every N records, every T milliseconds, or on every commit
+class SyncPolicy {
+    private final int everyRecords;
+    private final long everyMillis;
+
+    private SyncPolicy(int everyRecords, long everyMillis) {
+        this.everyRecords = everyRecords;
+        this.everyMillis = everyMillis;
+    }
+
+    public static SyncPolicy always() {
+        return new SyncPolicy(1, 0);
+    }
+
+    public static SyncPolicy everyRecords(int records) {
+        if (records < 1) {
+            throw new IllegalArgumentException("records must be positive: " + records);
+        }
+        return new SyncPolicy(records, 0);
+    }
+
+    public static SyncPolicy everyMillis(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("millis must be positive: " + millis);
+        }
+        return new SyncPolicy(0, millis);
+    }
+
+    // Accepts "always", "records:<n>" or "millis:<t>"
+    public static SyncPolicy parse(String spec) {
+        if (spec.equals("always")) {
+            return always();
+        }
+        int colon = spec.indexOf(':');
+        if (colon > 0) {
+            String kind = spec.substring(0, colon);
+            long value = Long.parseLong(spec.substring(colon + 1));
+            if (kind.equals("records")) {
+                return everyRecords((int) value);
+            }
+            if (kind.equals("millis")) {
+                return everyMillis(value);
+            }
+        }
+        throw new IllegalArgumentException("Unknown sync policy: " + spec);
+    }
+
+    public boolean isAlways() {
+        return everyRecords == 1;
+    }
+
+    public long getEveryMillis() {
+        return everyMillis;
+    }
+
+    public boolean shouldSync(int unsyncedRecords, long millisSinceSync) {
+        if (unsyncedRecords == 0) {
+            return false;
+        }
+        if (everyRecords > 0) {
+            return unsyncedRecords >= everyRecords;
+        }
+        return millisSinceSync >= everyMillis;
+    }
+}
+
+// Append-only journal keeping one channel open per log and group-committing concurrent appends.
+// Sequence numbers are the byte offset just past a record in the whole log, so they survive restarts.
+// The log is a chain of segments: records go to the active file at the log's path, and once it passes
+// journal.segmentBytes (64 MiB by default, 0 never rotates) the writer thread seals it as
+// <log>.<start sequence>. Sealed segments a snapshot covers can be dropped with compact.
+class Journal implements Closeable {
+    private static final Map<String, Journal> OPEN = new ConcurrentHashMap<>();
+    private static final long SEGMENT_BYTES = Long.getLong("journal.segmentBytes", 64L << 20);
+
+    // One file of a log; the active segment starts where the last sealed one ends
+    static final class Segment {
+        final Path path;
+        final long start;
+        final long size;
+
+        Segment(Path path, long start, long size) {
+            this.path = path;
+            this.start = start;
+            this.size = size;
+        }
+
+        long end() {
+            return start + size;
+        }
+    }
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(Journal::closeAll, "journal-shutdown"));
+    }
+
+    private final Path path;
+    private FileChannel channel;
+    private long segmentStart;
+    private final long segmentBytes;
+    private final SyncPolicy policy;
+    private final Object lock = new Object();
+    // Held by the writer while it rotates and by compact, so the segment list only changes under it
+    private final Object segmentLock = new Object();
+    private final Thread writer;
+    private final LongAdder bytesWritten;
+    private final LongAdder recordsWritten;
+    private final LatencyHistogram writeTime;
+    private final LatencyHistogram fsyncTime;
+    private final LongAdder bytesCompacted;
+
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long nextSequence;
+    private long writtenSequence;
+    private long durableSequence;
+    private boolean syncRequested;
+    private boolean closed;
+    private IOException failure;
+
+    private Journal(Path path, SyncPolicy policy, long segmentBytes) throws IOException {
+        this.path = path;
+        this.policy = policy;
+        this.segmentBytes = segmentBytes;
+        this.segmentStart = activeStart(path);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.nextSequence = segmentStart + channel.size();
+        this.writtenSequence = nextSequence;
+        this.durableSequence = nextSequence;
+        String metric = "journal." + path.getFileName();
+        this.bytesWritten = Metrics.counter(metric + ".bytesWritten");
+        this.recordsWritten = Metrics.counter(metric + ".recordsWritten");
+        this.writeTime = Metrics.histogram(metric + ".write");
+        this.fsyncTime = Metrics.histogram(metric + ".fsync");
+        this.bytesCompacted = Metrics.counter(metric + ".bytesCompacted");
+        this.writer = new Thread(this::writeLoop, "journal-" + path.getFileName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Shared journal for a log file, using the policy from the journal.sync system property
+    public static Journal forFile(String filename) throws IOException {
+        String key = Paths.get(filename).toAbsolutePath().normalize().toString();
+        try {
+            return OPEN.computeIfAbsent(key, k -> {
+                try {
+                    return new Journal(Paths.get(k), SyncPolicy.parse(System.getProperty("journal.sync", "millis:100")),
+                            SEGMENT_BYTES);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Returns the shared journal for a file only if one is already open
+    public static Journal ifOpen(String filename) {
+        return OPEN.get(Paths.get(filename).toAbsolutePath().normalize().toString());
+    }
+
+    // The log's segments in sequence order, sealed ones first and the active file (if it exists) last
+    static List<Segment> segments(Path log) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        Path dir = log.toAbsolutePath().getParent();
+        String prefix = log.getFileName() + ".";
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(prefix) && name.length() == prefix.length() + 20
+                            && name.substring(prefix.length()).chars().allMatch(Character::isDigit)) {
+                        segments.add(new Segment(file, Long.parseLong(name.substring(prefix.length())), Files.size(file)));
+                    }
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(segment -> segment.start));
+        long activeStart = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).end();
+        if (Files.exists(log)) {
+            segments.add(new Segment(log, activeStart, Files.size(log)));
+        }
+        return segments;
+    }
+
+    private static long activeStart(Path log) throws IOException {
+        List<Segment> segments = segments(log);
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        Segment last = segments.get(segments.size() - 1);
+        return last.path.equals(log) ? last.start : last.end();
+    }
+
+    private static Path sealedPath(Path log, long start) {
+        return log.resolveSibling(String.format("%s.%020d", log.getFileName(), start));
+    }
+
+    // Deletes sealed segments that end at or before sequence, such as those a snapshot covers, and
+    // returns the bytes freed. The newest one is replaced by an empty marker recording where the active
+    // segment starts. Runs alongside appends; only rotation waits for it.
+    public long compact(long sequence) throws IOException {
+        synchronized (segmentLock) {
+            List<Segment> segments = segments(path);
+            long freed = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                if (segment.path.equals(path) || segment.end() > sequence) {
+                    break;
+                }
+                boolean newestSealed = i + 1 == segments.size() || segments.get(i + 1).path.equals(path);
+                if (newestSealed) {
+                    if (segment.size == 0) {
+                        break;
+                    }
+                    Files.createFile(sealedPath(path, segment.end()));
+                }
+                Files.delete(segment.path);
+                freed += segment.size;
+            }
+            bytesCompacted.add(freed);
+            return freed;
+        }
+    }
+
+    public static void closeAll() {
+        for (Journal journal : OPEN.values()) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal " + journal.path + ": " + e.getMessage());
+            }
+        }
+        OPEN.clear();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Appends one line and blocks until it is written (and forced, under the "always" policy). Under the
+    // other policies the record reaches disk with a later group fsync; callers that promise durability
+    // pass the returned sequence to awaitDurable, which forces at once.
+    public long append(String record) throws IOException {
+        byte[] line = (record + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (lock) {
+            checkUsable();
+            pending.add(ByteBuffer.wrap(line));
+            nextSequence += line.length;
+            long sequence = nextSequence;
+            lock.notifyAll();
+            awaitLocked(sequence, policy.isAlways());
+            return sequence;
+        }
+    }
+
+    // Blocks until every record up to the given sequence has been forced to disk
+    public void awaitDurable(long sequence) throws IOException {
+        synchronized (lock) {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            syncRequested = true;
+            lock.notifyAll();
+            awaitLocked(sequence, true);
+        }
+    }
+
+    public long getWrittenSequence() {
+        synchronized (lock) {
+            return writtenSequence;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        OPEN.remove(path.toAbsolutePath().normalize().toString(), this);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkUsable() throws IOException {
+        if (failure != null) {
+            throw new IOException("Journal failed: " + path, failure);
+        }
+        if (closed) {
+            throw new IOException("Journal closed: " + path);
+        }
+    }
+
+    private void awaitLocked(long sequence, boolean durable) throws IOException {
+        boolean interrupted = false;
+        while ((durable ? durableSequence : writtenSequence) < sequence) {
+            if (failure != null) {
+                throw new IOException("Journal failed: " + path, failure);
+            }
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Seals the full active segment and starts an empty one at sequence; only the writer thread calls this
+    private void rotate(long sequence) throws IOException {
+        synchronized (segmentLock) {
+            channel.close();
+            Files.move(path, sealedPath(path, segmentStart), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            segmentStart = sequence;
+        }
+    }
+
+    private void writeLoop() {
+        int unsyncedRecords = 0;
+        long lastSync = System.currentTimeMillis();
+        while (true) {
+            List<ByteBuffer> batch;
+            long batchEnd;
+            boolean forceRequested;
+            boolean closing;
+            synchronized (lock) {
+                while (pending.isEmpty() && !syncRequested && !closed) {
+                    long wait = 0;
+                    if (unsyncedRecords > 0 && policy.getEveryMillis() > 0) {
+                        wait = policy.getEveryMillis() - (System.currentTimeMillis() - lastSync);
+                        if (wait <= 0) {
+                            break;
+                        }
+                    }
+                    try {
+                        lock.wait(wait);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                batchEnd = nextSequence;
+                forceRequested = syncRequested;
+                syncRequested = false;
+                closing = closed;
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+                    int first = 0;
+                    long writeStart = System.nanoTime();
+                    while (first < buffers.length) {
+                        bytesWritten.add(channel.write(buffers, first, buffers.length - first));
+                        while (first < buffers.length && !buffers[first].hasRemaining()) {
+                            first++;
+                        }
+                    }
+                    writeTime.recordSince(writeStart);
+                    recordsWritten.add(batch.size());
+                    unsyncedRecords += batch.size();
+                }
+                long now = System.currentTimeMillis();
+                boolean force = forceRequested || closing || policy.shouldSync(unsyncedRecords, now - lastSync);
+                if (force && unsyncedRecords > 0) {
+                    long forceStart = System.nanoTime();
+                    channel.force(false);
+                    fsyncTime.recordSince(forceStart);
+                    unsyncedRecords = 0;
+                    lastSync = now;
+                }
+                if (segmentBytes > 0 && batchEnd - segmentStart >= segmentBytes && !closing) {
+                    if (unsyncedRecords > 0) {
+                        channel.force(false);
+                        unsyncedRecords = 0;
+                        lastSync = now;
+                    }
+                    rotate(batchEnd);
+                }
+                synchronized (lock) {
+                    writtenSequence = batchEnd;
+                    if (unsyncedRecords == 0) {
+                        durableSequence = batchEnd;
+                    }
+                    lock.notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+            if (closing) {
+                synchronized (lock) {
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Standing queries: every buyer's wanted location and budget, indexed by the lower-cased location
+// and then by budget, so a listing finds the buyers it fits in time proportional to the matches.
+// A listing fits when its price is within the budget and the wanted location is a case-insensitive
+// substring of its location (an empty wanted location fits anywhere), as in Buyer.searchWithinBudget.
+// New and changed listings are queued and matched on a background thread that delivers
+// notifications to buyers, so catalog writes only pay for the enqueue.
+class ListingMatcher {
+    private static class Registration {
+        final Buyer buyer;
+        final String location;
+        final int budget;
+
+        Registration(Buyer buyer, String location, int budget) {
+            this.buyer = buyer;
+            this.location = location;
+            this.budget = budget;
+        }
+
+        boolean fits(String lowerLocation, int price) {
+            return price <= budget && lowerLocation.contains(location);
+        }
+    }
+
+    // oldLocation is null for a new listing
+    private static class ListingEvent {
+        final Property property;
+        final String location;
+        final int price;
+        final String oldLocation;
+        final int oldPrice;
+
+        ListingEvent(Property property, String oldLocation, int oldPrice) {
+            this.property = property;
+            this.location = property.getLocation().toLowerCase();
+            this.price = property.getPrice();
+            this.oldLocation = oldLocation == null ? null : oldLocation.toLowerCase();
+            this.oldPrice = oldPrice;
+        }
+    }
+
+    private final Map<String, PriceIndex> buyersByLocation = new HashMap<>();
+    private final IntObjectMap<Registration> registrations = new IntObjectMap<>();
+    // Number of distinct wanted locations of each length, so matching only tries those lengths
+    private int[] locationsByLength = new int[32];
+    private final BlockingQueue<ListingEvent> events = new LinkedBlockingQueue<>();
+    private Thread worker;
+
+    // Registers or replaces the buyer's standing query from its current preferences
+    public synchronized void register(Buyer buyer) {
+        unregister(buyer.getUserId());
+        String location = buyer.getLocationWanted() == null ? "" : buyer.getLocationWanted().toLowerCase();
+        Registration registration = new Registration(buyer, location, buyer.getBudgetRange());
+        registrations.put(buyer.getUserId(), registration);
+        PriceIndex budgets = buyersByLocation.get(location);
+        if (budgets == null) {
+            budgets = new PriceIndex();
+            buyersByLocation.put(location, budgets);
+            if (location.length() >= locationsByLength.length) {
+                locationsByLength = Arrays.copyOf(locationsByLength, location.length() * 2);
+            }
+            locationsByLength[location.length()]++;
+        }
+        budgets.add(registration.budget, buyer.getUserId());
+    }
+
+    public synchronized void unregister(int userId) {
+        Registration registration = registrations.remove(userId);
+        if (registration == null) {
+            return;
+        }
+        PriceIndex budgets = buyersByLocation.get(registration.location);
+        budgets.remove(registration.budget, userId);
+        if (budgets.size() == 0) {
+            buyersByLocation.remove(registration.location);
+            locationsByLength[registration.location.length()]--;
+        }
+    }
+
+    public synchronized int size() {
+        return registrations.size();
+    }
+
+    // Buyers whose standing query the listing fits, looked up by each distinct substring of the
+    // location whose length some wanted location has
+    public synchronized List<Buyer> match(String location, int price) {
+        String text = location.toLowerCase();
+        List<Buyer> result = new ArrayList<>();
+        collect(buyersByLocation.get(""), price, result);
+        Set<String> seen = new HashSet<>();
+        int maxLength = Math.min(text.length(), locationsByLength.length - 1);
+        for (int length = 1; length <= maxLength; length++) {
+            if (locationsByLength[length] == 0) {
+                continue;
+            }
+            for (int i = 0; i + length <= text.length(); i++) {
+                String part = text.substring(i, i + length);
+                if (seen.add(part)) {
+                    collect(buyersByLocation.get(part), price, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void collect(PriceIndex budgets, int price, List<Buyer> result) {
+        if (budgets == null) {
+            return;
+        }
+        for (int userId : budgets.range(price, Integer.MAX_VALUE, id -> true, Integer.MAX_VALUE)) {
+            result.add(registrations.get(userId).buyer);
+        }
+    }
+
+    public void listingAdded(Property property) {
+        enqueue(new ListingEvent(property, null, 0));
+    }
+
+    // Buyers the listing already fitted before the change are not notified again
+    public void listingUpdated(Property property, String oldLocation, int oldPrice) {
+        enqueue(new ListingEvent(property, oldLocation, oldPrice));
+    }
+
+    // Listing changes queued but not yet matched
+    public int getPendingCount() {
+        return events.size();
+    }
+
+    private void enqueue(ListingEvent event) {
+        events.add(event);
+        synchronized (events) {
+            if (worker == null) {
+                worker = new Thread(this::deliverLoop, "listing-matcher");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+    }
+
+    private void deliverLoop() {
+        while (true) {
+            ListingEvent event;
+            try {
+                event = events.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!event.property.isAvailable()) {
+                continue;
+            }
+            for (Buyer buyer : match(event.location, event.price)) {
+                if (event.oldLocation != null && fitsBefore(buyer, event)) {
+                    continue;
+                }
+                buyer.deliverNotification("New listing matching your criteria: ID: " + event.property.getPropertyId()
+                        + ", Location: " + event.property.getLocation() + ", Price: " + event.price
+                        + ", Type: " + event.property.getType());
+            }
+        }
+    }
+
+    private synchronized boolean fitsBefore(Buyer buyer, ListingEvent event) {
+        Registration registration = registrations.get(buyer.getUserId());
+        return registration != null && registration.fits(event.oldLocation, event.oldPrice);
+    }
+}
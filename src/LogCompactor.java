@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Background checkpointing for one system, so no request pays for a snapshot. Every
+// compaction.checkMillis (1000 by default), or sooner when the system asks, it checkpoints if a checkpoint
+// was requested or the journals have grown by compaction.logBytes (64 MiB by default) since the last
+// one. Each checkpoint also drops the journal segments its snapshot covers, so disk use and recovery
+// time stay bounded however long the system runs.
+class LogCompactor {
+    private static final LongAdder RUNS = Metrics.counter("compaction.runs");
+    private static final LongAdder FAILURES = Metrics.counter("compaction.failures");
+
+    private final PropertyManagementSystem pms;
+    private final long logBytes;
+    private final long checkMillis;
+    private boolean requested;
+    private Thread thread;
+
+    public LogCompactor(PropertyManagementSystem pms) {
+        this(pms, Long.getLong("compaction.logBytes", 64L << 20), Long.getLong("compaction.checkMillis", 1000));
+    }
+
+    public LogCompactor(PropertyManagementSystem pms, long logBytes, long checkMillis) {
+        this.pms = pms;
+        this.logBytes = logBytes;
+        this.checkMillis = checkMillis;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this::run, "log-compactor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // Asks for a checkpoint soon without waiting for it
+    public synchronized void requestCheckpoint() {
+        start();
+        requested = true;
+        notifyAll();
+    }
+
+    private void run() {
+        while (true) {
+            boolean checkpoint;
+            synchronized (this) {
+                if (!requested) {
+                    try {
+                        wait(checkMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                checkpoint = requested;
+                requested = false;
+            }
+            try {
+                if (checkpoint || pms.getJournalBytesSinceCheckpoint() >= logBytes) {
+                    pms.checkpoint();
+                    RUNS.increment();
+                }
+            } catch (IOException | RuntimeException e) {
+                FAILURES.increment();
+                System.err.println("Background checkpoint failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,26 +1,74 @@
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 
 // Utility class for file handling
 class FileUtils {
-    public static void writeToFile(String filename, String data) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename, true))) {
-            writer.write(data);
-            writer.newLine();
+    static final String USERS_FILE = "users.txt";
+    static final String PROPERTIES_FILE = "properties.txt";
+    static final String BOOKINGS_FILE = "bookings.txt";
+    private static final LatencyHistogram WRITE_TO_FILE = Metrics.histogram("fileUtils.writeToFile");
+    private static final LatencyHistogram READ_FROM_FILE = Metrics.histogram("fileUtils.readFromFile");
+
+    // Appends through the file's shared journal and returns the record's sequence number. The record is
+    // written but, unless journal.sync is "always", not yet forced; pass the sequence to awaitDurable
+    // before promising the change will survive a crash.
+    public static long writeToFile(String filename, String data) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return Journal.forFile(filename).append(data);
+        } finally {
+            WRITE_TO_FILE.recordSince(start);
+        }
+    }
+
+    // For setters whose signatures cannot declare IOException
+    public static long writeToFileUnchecked(String filename, String data) {
+        try {
+            return writeToFile(filename, data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
+    // Blocks until the file's records up to sequence are on disk
+    public static void awaitDurable(String filename, long sequence) throws IOException {
+        Journal.forFile(filename).awaitDurable(sequence);
+    }
+
     public static List<String> readFromFile(String filename) throws IOException {
-        List<String> lines = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                lines.add(line);
+        long start = System.nanoTime();
+        try {
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
             }
+            return lines;
+        } finally {
+            READ_FROM_FILE.recordSince(start);
         }
-        return lines;
     }
 }
 
@@ -34,10 +82,13 @@ interface UserOperations {
 
 // Abstract class for User
 abstract class User implements UserOperations {
+    private static final LatencyHistogram PROFILE_UPDATE = Metrics.histogram("user.updateProfile");
+
     protected int userId;
     protected String username;
     protected String email;
     protected String password;
+    protected volatile PropertyManagementSystem system;
 
     public User(int userId, String username, String email, String password) {
         this.userId = userId;
@@ -45,6 +96,77 @@ abstract class User implements UserOperations {
         this.email = email;
         this.password = password;
     }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    // Applies a profile change without journaling it, used by recovery
+    void applyProfile(String username, String email, String password) {
+        this.username = username;
+        this.email = email;
+        this.password = password;
+    }
+
+    // Set while the user is registered so username changes reach the system's index
+    void setSystem(PropertyManagementSystem system) {
+        this.system = system;
+    }
+
+    // Journal file of the owning system's data directory
+    protected String logFile(String name) {
+        return PropertyManagementSystem.logFile(system, name);
+    }
+
+    // Runs a journaled change of this user under the owning system's mutation lock
+    protected void mutate(PropertyManagementSystem.Mutation mutation) throws IOException {
+        PropertyManagementSystem.mutate(system, () -> {
+            synchronized (this) {
+                mutation.run();
+            }
+        });
+    }
+
+    // For setters whose signatures cannot declare IOException
+    protected void mutateUnchecked(PropertyManagementSystem.Mutation mutation) {
+        try {
+            mutate(mutation);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Shared by the updateProfile implementations: re-keys the username index, then journals
+    protected void changeProfile(String username, String email, String password) {
+        long start = System.nanoTime();
+        try {
+            mutateUnchecked(() -> {
+                boolean passwordChanged = !this.password.equals(password);
+                if (system != null) {
+                    system.renameUser(this, username);
+                }
+                applyProfile(username, email, password);
+                FileUtils.writeToFile(logFile(FileUtils.USERS_FILE), Records.encode(Records.PROFILE_UPDATED, userId, username, email, password));
+                if (system != null && passwordChanged) {
+                    system.closeSessions(this);
+                }
+            });
+        } finally {
+            PROFILE_UPDATE.recordSince(start);
+        }
+    }
 }
 
 // Interface for property management
@@ -54,322 +176,1668 @@ interface PropertyManagement {
     List<Property> searchProperty(String criteria);
 }
 
+// Interface for components that keep derived state in sync with the catalog
+interface CatalogListener {
+    void propertyAdded(Property property);
+
+    // Bulk form of propertyAdded for listeners that can merge a batch faster than one at a time
+    default void propertiesAdded(List<Property> properties) {
+        for (Property property : properties) {
+            propertyAdded(property);
+        }
+    }
+
+    void propertyRemoved(Property property);
+
+    void propertyUpdated(Property property, String oldLocation, int oldPrice, String oldType);
+
+    default void availabilityChanged(Property property) {
+    }
+
+    // The old coordinates are NaN when the property had none
+    default void coordinatesChanged(Property property, double oldLatitude, double oldLongitude) {
+    }
+}
+
 // Concrete class for Seller
 class Seller extends User implements PropertyManagement {
+    private static final LatencyHistogram ADD_LISTING = Metrics.histogram("seller.addProperty");
+    private static final LatencyHistogram REMOVE_LISTING = Metrics.histogram("seller.removeProperty");
+    private static final LatencyHistogram SEARCH = Metrics.histogram("seller.searchProperty");
+
     private String contactInfo;
     private int rating;
     private int activeListingsCount;
-    private List<Property> properties;
+    private int[] listingIds;
+    private int listingCount;
 
     public Seller(int userId, String username, String email, String password, String contactInfo, int rating) {
         super(userId, username, email, password);
         this.contactInfo = contactInfo;
         this.rating = rating;
         this.activeListingsCount = 0;
-        this.properties = new ArrayList<>();
+        this.listingIds = new int[4];
     }
 
+    // Listings are kept as ids and resolved through the system, which may hold them in other systems
     public List<Property> getProperties() {
+        int[] ids = getListingIds();
+        List<Property> properties = new ArrayList<>(ids.length);
+        PropertyManagementSystem pms = system;
+        if (pms != null) {
+            for (int id : ids) {
+                Property property = pms.getListing(id);
+                if (property != null) {
+                    properties.add(property);
+                }
+            }
+        }
         return properties;
     }
 
+    public synchronized int[] getListingIds() {
+        return Arrays.copyOf(listingIds, listingCount);
+    }
+
+    public synchronized boolean ownsListing(int propertyId) {
+        for (int i = 0; i < listingCount; i++) {
+            if (listingIds[i] == propertyId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getContactInfo() {
+        return contactInfo;
+    }
+
+    public int getRating() {
+        return rating;
+    }
+
+    public int getActiveListingsCount() {
+        return activeListingsCount;
+    }
+
+    synchronized void restoreListings(int[] listingIds, int activeListingsCount) {
+        this.listingIds = Arrays.copyOf(listingIds, Math.max(4, listingIds.length));
+        this.listingCount = listingIds.length;
+        this.activeListingsCount = activeListingsCount;
+    }
+
+    // Adds a listing without journaling, for recovery and bulk import
+    synchronized void attachListing(int propertyId) {
+        if (listingCount == listingIds.length) {
+            listingIds = Arrays.copyOf(listingIds, listingCount * 2);
+        }
+        listingIds[listingCount++] = propertyId;
+        activeListingsCount++;
+    }
+
+    // Removes a listing without journaling; false if the seller does not list it
+    synchronized boolean detachListing(int propertyId) {
+        for (int i = 0; i < listingCount; i++) {
+            if (listingIds[i] == propertyId) {
+                System.arraycopy(listingIds, i + 1, listingIds, i, listingCount - i - 1);
+                listingCount--;
+                activeListingsCount--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void adjustActiveListings(int delta) {
+        activeListingsCount += delta;
+    }
+
     @Override
     public void register() throws IOException {
-        FileUtils.writeToFile("users.txt", "Seller registered: " + username);
+        FileUtils.writeToFile(logFile(FileUtils.USERS_FILE), Records.encode(Records.SELLER_REGISTERED,
+                userId, username, email, password, contactInfo, rating));
+    }
+
+    @Override
+    public boolean login(String username, String password) {
+        return this.username.equals(username) && this.password.equals(password);
+    }
+
+    @Override
+    public void logout() {
+        AuditLog.publish(AuditEvent.Type.LOGOUT, username, "Seller");
+    }
+
+    @Override
+    public void updateProfile(String username, String email, String password) {
+        changeProfile(username, email, password);
+        AuditLog.publish(AuditEvent.Type.PROFILE_UPDATED, username, "Seller");
+    }
+
+    @Override
+    public void addProperty(Property property) throws IOException {
+        long start = System.nanoTime();
+        try {
+            mutate(() -> {
+                attachListing(property.getPropertyId());
+                FileUtils.writeToFile(logFile(FileUtils.PROPERTIES_FILE), Records.encode(Records.LISTING_ADDED, userId, property.getPropertyId()));
+            });
+        } finally {
+            ADD_LISTING.recordSince(start);
+        }
+    }
+
+    @Override
+    public void removeProperty(Property property) throws IOException {
+        long start = System.nanoTime();
+        try {
+            mutate(() -> {
+                if (detachListing(property.getPropertyId())) {
+                    FileUtils.writeToFile(logFile(FileUtils.PROPERTIES_FILE), Records.encode(Records.LISTING_REMOVED, userId, property.getPropertyId()));
+                }
+            });
+        } finally {
+            REMOVE_LISTING.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Property> searchProperty(String criteria) {
+        return searchProperty(criteria, 0, Integer.MAX_VALUE);
+    }
+
+    // One page of the search above: skips offset matches and resolves listings only until limit are found
+    public List<Property> searchProperty(String criteria, int offset, int limit) {
+        long start = System.nanoTime();
+        try {
+            List<Property> result = new ArrayList<>();
+            PropertyManagementSystem pms = system;
+            if (pms == null) {
+                return result;
+            }
+            int skipped = 0;
+            for (int id : getListingIds()) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                Property property = pms.getListing(id);
+                if (property != null && property.getLocation().contains(criteria)) {
+                    if (skipped < offset) {
+                        skipped++;
+                    } else {
+                        result.add(property);
+                    }
+                }
+            }
+            return result;
+        } finally {
+            SEARCH.recordSince(start);
+        }
+    }
+}
+
+// Concrete class for Buyer
+class Buyer extends User {
+    private static final LatencyHistogram SEARCH = Metrics.histogram("buyer.searchProperty");
+    private static final LatencyHistogram SEARCH_WITHIN_BUDGET = Metrics.histogram("buyer.searchWithinBudget");
+    private static final LatencyHistogram ADD_TO_WISHLIST = Metrics.histogram("buyer.addToWishlist");
+    private static final LatencyHistogram SET_BUDGET_RANGE = Metrics.histogram("buyer.setBudgetRange");
+
+    private final IntBitmap wishlist = new IntBitmap();
+    private int budgetRange;
+    private String locationWanted;
+    private final Queue<String> notifications = new ConcurrentLinkedQueue<>();
+
+    public Buyer(int userId, String username, String email, String password, int budgetRange, String locationWanted) {
+        super(userId, username, email, password);
+        this.budgetRange = budgetRange;
+        this.locationWanted = locationWanted;
+    }
+
+    // Copy of the wishlisted property ids
+    public synchronized IntBitmap getWishlist() {
+        return wishlist.copy();
+    }
+
+    public int getBudgetRange() {
+        return budgetRange;
+    }
+
+    public String getLocationWanted() {
+        return locationWanted;
+    }
+
+    @Override
+    public void register() throws IOException {
+        FileUtils.writeToFile(logFile(FileUtils.USERS_FILE), Records.encode(Records.BUYER_REGISTERED,
+                userId, username, email, password, budgetRange, locationWanted));
+    }
+
+    @Override
+    public boolean login(String username, String password) {
+        return this.username.equals(username) && this.password.equals(password);
+    }
+
+    @Override
+    public void logout() {
+        AuditLog.publish(AuditEvent.Type.LOGOUT, username, "Buyer");
+    }
+
+    @Override
+    public void updateProfile(String username, String email, String password) {
+        changeProfile(username, email, password);
+        AuditLog.publish(AuditEvent.Type.PROFILE_UPDATED, username, "Buyer");
+    }
+
+    public void addToWishlist(int propertyId) {
+        long start = System.nanoTime();
+        try {
+            mutateUnchecked(() -> {
+                if (wishlist.add(propertyId)) {
+                    FileUtils.writeToFile(logFile(FileUtils.USERS_FILE), Records.encode(Records.WISHLIST_ADDED, userId, propertyId));
+                }
+            });
+            AuditLog.publish(AuditEvent.Type.WISHLIST_ADDED, username, propertyId);
+        } finally {
+            ADD_TO_WISHLIST.recordSince(start);
+        }
+    }
+
+    public void setBudgetRange(int budgetRange) {
+        long start = System.nanoTime();
+        try {
+            mutateUnchecked(() -> {
+                applyBudgetRange(budgetRange);
+                FileUtils.writeToFile(logFile(FileUtils.USERS_FILE), Records.encode(Records.BUDGET_SET, userId, budgetRange));
+            });
+            AuditLog.publish(AuditEvent.Type.BUDGET_SET, username, budgetRange);
+        } finally {
+            SET_BUDGET_RANGE.recordSince(start);
+        }
+    }
+
+    synchronized void applyWishlistAdd(int propertyId) {
+        wishlist.add(propertyId);
+    }
+
+    // Also re-registers the buyer's standing query with its system
+    void applyBudgetRange(int budgetRange) {
+        this.budgetRange = budgetRange;
+        PropertyManagementSystem pms = system;
+        if (pms != null) {
+            pms.getListingMatcher().register(this);
+        }
+    }
+
+    void deliverNotification(String message) {
+        notifications.add(message);
+    }
+
+    // Removes and returns the notifications delivered since the last call
+    public List<String> takeNotifications() {
+        List<String> taken = new ArrayList<>();
+        String message;
+        while ((message = notifications.poll()) != null) {
+            taken.add(message);
+        }
+        return taken;
+    }
+
+    public List<Property> searchProperty(PropertyManagementSystem pms, String criteria) {
+        return searchProperty(pms, criteria, 0, Integer.MAX_VALUE);
+    }
+
+    // One page of the search above, streamed from the index so only offset + limit matches are visited
+    public List<Property> searchProperty(PropertyManagementSystem pms, String criteria, int offset, int limit) {
+        long start = System.nanoTime();
+        try {
+            AuditLog.publish(AuditEvent.Type.SEARCH, username, criteria);
+            List<Property> result = new ArrayList<>();
+            int[] skipped = new int[1];
+            if (limit > 0) {
+                pms.forEachMatch(criteria, false, property -> {
+                    if (property.getLocation().contains(criteria)) {
+                        if (skipped[0] < offset) {
+                            skipped[0]++;
+                        } else {
+                            result.add(property);
+                        }
+                    }
+                    return result.size() < limit;
+                });
+            }
+            return result;
+        } finally {
+            SEARCH.recordSince(start);
+        }
+    }
+
+    // Available listings within budget in the wanted location, cheapest first
+    public List<Property> searchWithinBudget(PropertyManagementSystem pms, int limit) {
+        long start = System.nanoTime();
+        try {
+            String location = locationWanted == null || locationWanted.isEmpty() ? null : locationWanted;
+            return pms.searchByPrice(Integer.MIN_VALUE, budgetRange, null, location, true, limit);
+        } finally {
+            SEARCH_WITHIN_BUDGET.recordSince(start);
+        }
+    }
+
+    public void viewDetails(Property property) {
+        System.out.println("Viewing details for property: " + property.getPropertyId());
+    }
+}
+
+// Property class
+// A listing. Outside a system it holds its own values; once attached they move into the system's
+// ColumnarPropertyStore and the object is a view of its row, keeping only the id and the row.
+class Property {
+    // The values of a listing that is not in a system
+    private static class Values {
+        String location;
+        int price;
+        String type;
+        boolean available = true;
+        // NaN when the listing has no coordinates
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+    }
+
+    private int propertyId;
+    // Null while attached. Attaching publishes system before clearing this and detaching sets it before
+    // clearing system, so a reader that finds neither raced a move and looks again, as does one whose row
+    // was released while it read.
+    private volatile Values values;
+    private int row;
+    private volatile PropertyManagementSystem system;
+
+    public Property(int propertyId, String location, int price, String type) {
+        Values values = new Values();
+        values.location = location;
+        values.price = price;
+        values.type = type;
+        this.propertyId = propertyId;
+        this.values = values;
+    }
+
+    public Property(int propertyId, String location, int price, String type, double latitude, double longitude) {
+        this(propertyId, location, price, type);
+        GeoIndex.checkCoordinates(latitude, longitude);
+        values.latitude = latitude;
+        values.longitude = longitude;
+    }
+
+    public int getPropertyId() {
+        return propertyId;
+    }
+
+    public String getLocation() {
+        while (true) {
+            PropertyManagementSystem pms = system;
+            if (pms != null) {
+                String location = pms.getColumns().location(row);
+                if (system == pms) {
+                    return location;
+                }
+                continue;
+            }
+            Values local = values;
+            if (local != null) {
+                return local.location;
+            }
+        }
+    }
+
+    public int getPrice() {
+        while (true) {
+            PropertyManagementSystem pms = system;
+            if (pms != null) {
+                int price = pms.getColumns().price(row);
+                if (system == pms) {
+                    return price;
+                }
+                continue;
+            }
+            Values local = values;
+            if (local != null) {
+                return local.price;
+            }
+        }
+    }
+
+    public String getType() {
+        while (true) {
+            PropertyManagementSystem pms = system;
+            if (pms != null) {
+                String type = pms.getColumns().type(row);
+                if (system == pms) {
+                    return type;
+                }
+                continue;
+            }
+            Values local = values;
+            if (local != null) {
+                return local.type;
+            }
+        }
+    }
+
+    public boolean isAvailable() {
+        while (true) {
+            PropertyManagementSystem pms = system;
+            if (pms != null) {
+                boolean available = pms.getColumns().isAvailable(row);
+                if (system == pms) {
+                    return available;
+                }
+                continue;
+            }
+            Values local = values;
+            if (local != null) {
+                return local.available;
+            }
+        }
+    }
+
+    public boolean hasCoordinates() {
+        return !Double.isNaN(getLatitude());
+    }
+
+    public double getLatitude() {
+        while (true) {
+            PropertyManagementSystem pms = system;
+            if (pms != null) {
+                double latitude = pms.getColumns().latitude(row);
+                if (system == pms) {
+                    return latitude;
+                }
+                continue;
+            }
+            Values local = values;
+            if (local != null) {
+                return local.latitude;
+            }
+        }
+    }
+
+    public double getLongitude() {
+        while (true) {
+            PropertyManagementSystem pms = system;
+            if (pms != null) {
+                double longitude = pms.getColumns().longitude(row);
+                if (system == pms) {
+                    return longitude;
+                }
+                continue;
+            }
+            Values local = values;
+            if (local != null) {
+                return local.longitude;
+            }
+        }
+    }
+
+    // Changes to a property in a system go through the system so its indexes and journal stay in step
+    public void setAvailable(boolean available) {
+        PropertyManagementSystem pms = system;
+        if (pms != null) {
+            try {
+                pms.setAvailable(this, available);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        applyAvailable(available);
+        FileUtils.writeToFileUnchecked(FileUtils.PROPERTIES_FILE, Records.encode(Records.PROPERTY_AVAILABILITY, propertyId, available));
+    }
+
+    public void updateProperty(String location, int price, String type) throws IOException {
+        PropertyManagementSystem pms = system;
+        if (pms != null) {
+            pms.updateProperty(this, location, price, type);
+            return;
+        }
+        applyUpdate(location, price, type);
+        FileUtils.writeToFile(FileUtils.PROPERTIES_FILE, Records.encode(Records.PROPERTY_UPDATED, propertyId, location, price, type));
+    }
+
+    // Places the property at the given coordinates, or clears them when both are NaN
+    public void setCoordinates(double latitude, double longitude) throws IOException {
+        if (!Double.isNaN(latitude) || !Double.isNaN(longitude)) {
+            GeoIndex.checkCoordinates(latitude, longitude);
+        }
+        PropertyManagementSystem pms = system;
+        if (pms != null) {
+            pms.setCoordinates(this, latitude, longitude);
+            return;
+        }
+        applyCoordinates(latitude, longitude);
+        FileUtils.writeToFile(FileUtils.PROPERTIES_FILE, Records.encode(Records.PROPERTY_LOCATED, propertyId, latitude, longitude));
+    }
+
+    public void removeProperty() throws IOException {
+        FileUtils.writeToFile(PropertyManagementSystem.logFile(system, FileUtils.PROPERTIES_FILE), Records.encode(Records.PROPERTY_REMOVED, propertyId));
+    }
+
+    // Recovery applies journaled changes through these without writing them again. A system calls them
+    // under its catalog write lock.
+    void applyUpdate(String location, int price, String type) {
+        PropertyManagementSystem pms = system;
+        if (pms != null) {
+            pms.getColumns().update(row, location, price, type);
+            return;
+        }
+        values.location = location;
+        values.price = price;
+        values.type = type;
+    }
+
+    void applyAvailable(boolean available) {
+        PropertyManagementSystem pms = system;
+        if (pms != null) {
+            pms.getColumns().setAvailable(row, available);
+            return;
+        }
+        values.available = available;
+    }
+
+    void applyCoordinates(double latitude, double longitude) {
+        PropertyManagementSystem pms = system;
+        if (pms != null) {
+            pms.getColumns().setCoordinates(row, latitude, longitude);
+            return;
+        }
+        values.latitude = latitude;
+        values.longitude = longitude;
+    }
+
+    // Moves the values into a row of the system's store; called under its catalog write lock
+    void attach(PropertyManagementSystem system) {
+        Values local = values;
+        row = system.getColumns().add(local.location, local.price, local.type, local.available, local.latitude,
+                local.longitude);
+        this.system = system;
+        values = null;
+    }
+
+    // Copies the values back out of the store and frees the row; called under the catalog write lock
+    void detach() {
+        PropertyManagementSystem pms = system;
+        ColumnarPropertyStore columns = pms.getColumns();
+        Values local = new Values();
+        local.location = columns.location(row);
+        local.price = columns.price(row);
+        local.type = columns.type(row);
+        local.available = columns.isAvailable(row);
+        local.latitude = columns.latitude(row);
+        local.longitude = columns.longitude(row);
+        values = local;
+        system = null;
+        columns.release(row);
+    }
+
+    public static List<Property> searchProperty(String criteria, List<Property> propertyList) {
+        String query = criteria.toLowerCase();
+        List<Property> properties = new ArrayList<>();
+        for (Property property : propertyList) {
+            if (property.getLocation().toLowerCase().contains(query) ||
+                    property.getType().toLowerCase().contains(query)) {
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+
+    // Index-backed form of the search above over the system's catalog
+    public static List<Property> searchProperty(String criteria, PropertyManagementSystem pms) {
+        return pms.searchProperty(criteria);
+    }
+}
+
+// Booking class
+class Booking {
+    private int bookingId;
+    private int propertyId;
+    private String bookingDate;
+    private String checkInDate;
+    private String checkOutDate;
+    private final int checkInDay;
+    private final int checkOutDay;
+    // The user who made the booking, or 0 when not recorded (imports without a userId column and bookings
+    // from older journals)
+    private final int userId;
+
+    // Dates are ISO yyyy-MM-dd; the stay covers check-in up to but not including check-out
+    public Booking(int bookingId, int propertyId, String bookingDate, String checkInDate, String checkOutDate) {
+        this(bookingId, propertyId, bookingDate, checkInDate, checkOutDate, 0);
+    }
+
+    public Booking(int bookingId, int propertyId, String bookingDate, String checkInDate, String checkOutDate,
+            int userId) {
+        this.userId = userId;
+        this.bookingId = bookingId;
+        this.propertyId = propertyId;
+        this.bookingDate = bookingDate;
+        this.checkInDate = checkInDate;
+        this.checkOutDate = checkOutDate;
+        this.checkInDay = BookingCalendar.toEpochDay(checkInDate);
+        this.checkOutDay = BookingCalendar.toEpochDay(checkOutDate);
+        if (checkOutDay <= checkInDay) {
+            throw new IllegalArgumentException("Check-out must be after check-in: " + checkInDate + " to " + checkOutDate);
+        }
+    }
+
+    public int getBookingId() {
+        return bookingId;
+    }
+
+    public int getPropertyId() {
+        return propertyId;
+    }
+
+    public String getBookingDate() {
+        return bookingDate;
+    }
+
+    public String getCheckInDate() {
+        return checkInDate;
+    }
+
+    public String getCheckOutDate() {
+        return checkOutDate;
+    }
+
+    public int getCheckInDay() {
+        return checkInDay;
+    }
+
+    public int getCheckOutDay() {
+        return checkOutDay;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public long cancelBooking(PropertyManagementSystem pms) throws IOException {
+        return FileUtils.writeToFile(PropertyManagementSystem.logFile(pms, FileUtils.BOOKINGS_FILE), Records.encode(Records.BOOKING_CANCELLED, bookingId));
+    }
+
+    public boolean checkAvailability(PropertyManagementSystem pms) {
+        return pms.containsProperty(propertyId) && pms.isAvailable(propertyId, checkInDay, checkOutDay);
+    }
+
+    public long confirmBooking(PropertyManagementSystem pms) throws IOException {
+        return FileUtils.writeToFile(PropertyManagementSystem.logFile(pms, FileUtils.BOOKINGS_FILE), Records.bookingConfirmed(this));
+    }
+}
+
+// Property Management System class
+// Locking: every mutation holds the read side of stateLock, which a checkpoint takes exclusively so
+// snapshots see a quiescent state. The catalog (property map and its listeners) has its own
+// read/write lock. Bookings only take the calendar stripe of their property, so bookings for
+// different properties proceed in parallel. Catalog changes also take the property's stripe, which
+// keeps its journal records in the order they were applied, but they hold the catalog write lock only
+// while applying, never across the journal write.
+class PropertyManagementSystem {
+    static final String SNAPSHOT_FILE = "pms.snapshot";
+
+    private static final LatencyHistogram RECOVER = Metrics.histogram("pms.recover");
+    private static final LatencyHistogram CHECKPOINT = Metrics.histogram("pms.checkpoint");
+    private static final LatencyHistogram SEARCH = Metrics.histogram("pms.searchProperty");
+    private static final LatencyHistogram SEARCH_BY_PRICE = Metrics.histogram("pms.searchByPrice");
+    private static final LatencyHistogram SEARCH_NEARBY = Metrics.histogram("pms.searchNearby");
+    private static final LatencyHistogram SEARCH_TOP = Metrics.histogram("pms.searchTop");
+    private static final LatencyHistogram ADD_PROPERTY = Metrics.histogram("pms.addProperty");
+    private static final LatencyHistogram REMOVE_PROPERTY = Metrics.histogram("pms.removeProperty");
+    private static final LatencyHistogram UPDATE_PROPERTY = Metrics.histogram("pms.updateProperty");
+    private static final LatencyHistogram SET_AVAILABLE = Metrics.histogram("pms.setAvailable");
+    private static final LatencyHistogram SET_COORDINATES = Metrics.histogram("pms.setCoordinates");
+    private static final LatencyHistogram REGISTER_USER = Metrics.histogram("pms.registerUser");
+    private static final LatencyHistogram AUTHENTICATE = Metrics.histogram("pms.authenticateUser");
+    private static final LatencyHistogram LOGIN = Metrics.histogram("pms.login");
+    private static final LatencyHistogram LOGOUT = Metrics.histogram("pms.logout");
+    private static final LatencyHistogram PROCESS_BOOKING = Metrics.histogram("pms.processBooking");
+    private static final LatencyHistogram CANCEL_BOOKING = Metrics.histogram("pms.cancelBooking");
+    private static final LongAdder AUTHENTICATION_FAILURES = Metrics.counter("pms.authenticateUser.failures");
+    private static final LongAdder BOOKINGS_REJECTED = Metrics.counter("pms.processBooking.rejected");
+
+    // A state change that journals, run under the system's mutation lock
+    interface Mutation {
+        void run() throws IOException;
+    }
+
+    // Id to view, in insertion order; the listings' values live in columns
+    private final IntObjectMap<Property> properties;
+    private final ColumnarPropertyStore columns = new ColumnarPropertyStore();
+    private final List<User> userList;
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+    private final SessionTable sessions = new SessionTable(Long.getLong("session.idleMillis", 30 * 60 * 1000L));
+    private final ConcurrentHashMap<Integer, Booking> bookings;
+    private final BookingCalendar calendar = new BookingCalendar();
+    private final int snapshotInterval;
+    private final AtomicInteger mutationCount = new AtomicInteger();
+    private final AtomicInteger lastUserId = new AtomicInteger();
+    private final AtomicInteger lastBookingId = new AtomicInteger();
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private final ReentrantReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    private final List<CatalogListener> catalogListeners = new ArrayList<>();
+    private final PropertySearchIndex searchIndex = new PropertySearchIndex();
+    private final PriceIndex priceIndex = new PriceIndex();
+    private final CatalogBitmaps bitmaps = new CatalogBitmaps();
+    private final GeoIndex geoIndex = new GeoIndex();
+    private final CatalogFacets facets = new CatalogFacets();
+    private final ListingMatcher listingMatcher;
+    private final Path dataDir;
+    private final LogCompactor compactor;
+    private final Object checkpointLock = new Object();
+    private volatile long[] checkpointPositions = new long[Snapshot.LOGS.length];
+    // Resolves seller listing ids; a directory whose catalog is held by other systems resolves through them
+    private volatile IntFunction<Property> listingResolver = this::getProperty;
+
+    public PropertyManagementSystem() {
+        this(0);
+    }
+
+    // snapshotInterval is the number of system-level mutations between automatic snapshots, 0 to disable
+    public PropertyManagementSystem(int snapshotInterval) {
+        this(snapshotInterval, Paths.get(""), new ListingMatcher());
+    }
+
+    // Journals and snapshots live in dataDir; systems sharing a matcher notify each other's buyers
+    PropertyManagementSystem(int snapshotInterval, Path dataDir, ListingMatcher listingMatcher) {
+        this.properties = new IntObjectMap<>();
+        this.userList = new ArrayList<>();
+        this.bookings = new ConcurrentHashMap<>();
+        this.snapshotInterval = snapshotInterval;
+        this.dataDir = dataDir;
+        this.listingMatcher = listingMatcher;
+        this.compactor = snapshotInterval > 0 ? new LogCompactor(this) : null;
+        addCatalogListener(searchIndex);
+        addCatalogListener(priceIndex);
+        addCatalogListener(bitmaps);
+        addCatalogListener(geoIndex);
+        addCatalogListener(facets);
+    }
+
+    // Loads the latest snapshot and replays the journal tail written after it
+    public static PropertyManagementSystem recover() throws IOException {
+        return recover(Paths.get(""), new ListingMatcher(), null);
+    }
+
+    // Recovers the system stored in dataDir. Seller listings are kept if the property is in this system or
+    // passes listedElsewhere, for systems whose catalog lives in other systems.
+    static PropertyManagementSystem recover(Path dataDir, ListingMatcher listingMatcher, IntPredicate listedElsewhere)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(dataDir.toAbsolutePath());
+            PropertyManagementSystem pms = new PropertyManagementSystem(Integer.getInteger("snapshot.interval", 10000),
+                    dataDir, listingMatcher);
+            pms.checkpointPositions = Snapshot.recover(pms, dataDir.resolve(SNAPSHOT_FILE), listedElsewhere);
+            if (pms.compactor != null) {
+                pms.compactor.start();
+            }
+            return pms;
+        } finally {
+            RECOVER.recordSince(start);
+        }
+    }
+
+    // Path of one of this system's journal files
+    String logFile(String name) {
+        return dataDir.resolve(name).toString();
+    }
+
+    // Journal file for objects that may not be in a system yet
+    static String logFile(PropertyManagementSystem pms, String name) {
+        return pms == null ? name : pms.logFile(name);
+    }
+
+    // Writes a snapshot of the current state tagged with the journal positions it covers, then drops the
+    // journal segments it makes redundant. Writers wait only while the state is serialized into memory.
+    public void checkpoint() throws IOException {
+        long start = System.nanoTime();
+        try {
+            synchronized (checkpointLock) {
+                long[] positions;
+                byte[] image;
+                stateLock.writeLock().lock();
+                try {
+                    positions = Snapshot.positions(this);
+                    image = Snapshot.encode(this, positions);
+                } finally {
+                    stateLock.writeLock().unlock();
+                }
+                Snapshot.store(image, dataDir.resolve(SNAPSHOT_FILE));
+                checkpointPositions = positions;
+                for (int i = 0; i < positions.length; i++) {
+                    Journal.forFile(logFile(Snapshot.LOGS[i])).compact(positions[i]);
+                }
+            }
+        } finally {
+            CHECKPOINT.recordSince(start);
+        }
+    }
+
+    // Journal bytes written since the last checkpoint, which a recovery would replay
+    public long getJournalBytesSinceCheckpoint() {
+        long[] positions = checkpointPositions;
+        long bytes = 0;
+        for (int i = 0; i < positions.length; i++) {
+            Journal journal = Journal.ifOpen(logFile(Snapshot.LOGS[i]));
+            if (journal != null) {
+                bytes += journal.getWrittenSequence() - positions[i];
+            }
+        }
+        return bytes;
+    }
+
+    // Runs a mutation of pms state, or runs it directly for objects not yet in a system
+    static void mutate(PropertyManagementSystem pms, Mutation mutation) throws IOException {
+        if (pms == null) {
+            mutation.run();
+        } else {
+            pms.mutate(mutation);
+        }
+    }
+
+    void mutate(Mutation mutation) throws IOException {
+        stateLock.readLock().lock();
+        try {
+            mutation.run();
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        mutated();
+    }
+
+    // Runs a batch mutation holding the calendar stripes of all the given properties, so no booking or
+    // catalog change on them can slip between the batch's state change and its journal record
+    void mutateProperties(int[] propertyIds, Mutation mutation) throws IOException {
+        mutate(() -> {
+            List<ReentrantLock> stripes = calendar.locksFor(propertyIds);
+            for (ReentrantLock stripe : stripes) {
+                stripe.lock();
+            }
+            try {
+                mutation.run();
+            } finally {
+                for (int i = stripes.size() - 1; i >= 0; i--) {
+                    stripes.get(i).unlock();
+                }
+            }
+        });
+    }
+
+    // Every snapshotInterval mutations the compactor checkpoints in the background
+    private void mutated() {
+        if (compactor != null && mutationCount.incrementAndGet() % snapshotInterval == 0) {
+            compactor.requestCheckpoint();
+        }
+    }
+
+    // State changes shared by the public operations and recovery; these do not journal
+    void attachProperty(Property property) {
+        catalogLock.writeLock().lock();
+        try {
+            if (properties.containsKey(property.getPropertyId())) {
+                throw new IllegalArgumentException("Property ID already exists: " + property.getPropertyId());
+            }
+            properties.put(property.getPropertyId(), property);
+            property.attach(this);
+            for (CatalogListener listener : catalogListeners) {
+                listener.propertyAdded(property);
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    // Attaches a batch with one catalog lock acquisition and one bulk call per listener. Properties whose id
+    // is already taken, by the catalog or earlier in the batch, are skipped and returned.
+    List<Property> attachProperties(List<Property> batch) {
+        List<Property> attached = new ArrayList<>(batch.size());
+        List<Property> clashing = new ArrayList<>();
+        catalogLock.writeLock().lock();
+        try {
+            for (Property property : batch) {
+                if (properties.containsKey(property.getPropertyId())) {
+                    clashing.add(property);
+                    continue;
+                }
+                properties.put(property.getPropertyId(), property);
+                property.attach(this);
+                attached.add(property);
+            }
+            for (CatalogListener listener : catalogListeners) {
+                listener.propertiesAdded(attached);
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        return clashing;
+    }
+
+    // Removes whichever property has the same id, so callers may pass a placeholder instance
+    Property detachProperty(int propertyId) {
+        catalogLock.writeLock().lock();
+        try {
+            Property removed = properties.remove(propertyId);
+            if (removed != null) {
+                removed.detach();
+                for (CatalogListener listener : catalogListeners) {
+                    listener.propertyRemoved(removed);
+                }
+            }
+            return removed;
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    void attachUser(User user) {
+        if (usersByName.putIfAbsent(user.getUsername(), user) != null) {
+            throw new IllegalArgumentException("Username already taken: " + user.getUsername());
+        }
+        synchronized (userList) {
+            userList.add(user);
+        }
+        lastUserId.accumulateAndGet(user.getUserId(), Math::max);
+        user.setSystem(this);
+        if (user instanceof Buyer) {
+            listingMatcher.register((Buyer) user);
+        }
+    }
+
+    // Reverses attachUser, for a registration whose journal write failed
+    void detachUser(User user) {
+        if (user instanceof Buyer) {
+            listingMatcher.unregister(user.getUserId());
+        }
+        user.setSystem(null);
+        synchronized (userList) {
+            userList.remove(user);
+        }
+        usersByName.remove(user.getUsername(), user);
+    }
+
+    // Re-keys the username index before a profile change; rejects names held by another user
+    void renameUser(User user, String newUsername) {
+        if (user.getUsername().equals(newUsername)) {
+            return;
+        }
+        User holder = usersByName.putIfAbsent(newUsername, user);
+        if (holder != null) {
+            throw new IllegalArgumentException("Username already taken: " + newUsername);
+        }
+        usersByName.remove(user.getUsername(), user);
+    }
+
+    void closeSessions(User user) {
+        sessions.closeAll(user);
+    }
+
+    // Returns false if the booking id is taken or the stay overlaps an existing booking
+    boolean attachBooking(Booking booking) {
+        if (bookings.putIfAbsent(booking.getBookingId(), booking) != null) {
+            return false;
+        }
+        if (!calendar.reserve(booking)) {
+            bookings.remove(booking.getBookingId(), booking);
+            return false;
+        }
+        lastBookingId.accumulateAndGet(booking.getBookingId(), Math::max);
+        return true;
+    }
+
+    boolean detachBooking(Booking booking) {
+        if (!bookings.remove(booking.getBookingId(), booking)) {
+            return false;
+        }
+        calendar.release(booking);
+        return true;
+    }
+
+    // Getter methods
+    // Copy of the catalog in insertion order
+    public List<Property> getPropertyList() {
+        catalogLock.readLock().lock();
+        try {
+            return properties.values();
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    // Unused ids for new users and bookings, safe to draw from concurrent callers
+    public int nextUserId() {
+        return lastUserId.incrementAndGet();
     }
 
-    @Override
-    public boolean login(String username, String password) {
-        return this.username.equals(username) && this.password.equals(password);
+    public int nextBookingId() {
+        return lastBookingId.incrementAndGet();
     }
 
-    @Override
-    public void logout() {
-        System.out.println("Seller logged out: " + username);
+    public User findUser(String username) {
+        return usersByName.get(username);
     }
 
-    @Override
-    public void updateProfile(String username, String email, String password) {
-        this.username = username;
-        this.email = email;
-        this.password = password;
-        System.out.println("Seller profile updated: " + username);
+    ColumnarPropertyStore getColumns() {
+        return columns;
     }
 
-    @Override
-    public void addProperty(Property property) throws IOException {
-        properties.add(property);
-        activeListingsCount++;
-        FileUtils.writeToFile("properties.txt", "Property added by seller: " + property.getPropertyId());
+    // The listed property with this id, wherever the catalog holding it lives
+    public Property getListing(int propertyId) {
+        return listingResolver.apply(propertyId);
     }
 
-    @Override
-    public void removeProperty(Property property) throws IOException {
-        properties.remove(property);
-        activeListingsCount--;
-        FileUtils.writeToFile("properties.txt", "Property removed by seller: " + property.getPropertyId());
+    // Routes getListing to other systems, for a system that keeps users but not the catalog
+    void resolveListingsWith(IntFunction<Property> resolver) {
+        listingResolver = resolver;
     }
 
-    @Override
-    public List<Property> searchProperty(String criteria) {
-        List<Property> result = new ArrayList<>();
-        for (Property property : properties) {
-            if (property.getLocation().contains(criteria)) {
-                result.add(property);
-            }
+    public Property getProperty(int propertyId) {
+        catalogLock.readLock().lock();
+        try {
+            return properties.get(propertyId);
+        } finally {
+            catalogLock.readLock().unlock();
         }
-        return result;
     }
-}
-
-// Concrete class for Buyer
-class Buyer extends User {
-    private List<String> wishlist;
-    private int budgetRange;
-    private String locationWanted;
 
-    public Buyer(int userId, String username, String email, String password, int budgetRange, String locationWanted) {
-        super(userId, username, email, password);
-        this.wishlist = new ArrayList<>();
-        this.budgetRange = budgetRange;
-        this.locationWanted = locationWanted;
+    public boolean containsProperty(int propertyId) {
+        return getProperty(propertyId) != null;
     }
 
-    @Override
-    public void register() throws IOException {
-        FileUtils.writeToFile("users.txt", "Buyer registered: " + username);
+    public int getPropertyCount() {
+        catalogLock.readLock().lock();
+        try {
+            return properties.size();
+        } finally {
+            catalogLock.readLock().unlock();
+        }
     }
 
-    @Override
-    public boolean login(String username, String password) {
-        return this.username.equals(username) && this.password.equals(password);
+    // Copy of the registered users in registration order
+    public List<User> getUserList() {
+        synchronized (userList) {
+            return new ArrayList<>(userList);
+        }
     }
 
-    @Override
-    public void logout() {
-        System.out.println("Buyer logged out: " + username);
+    public int getUserCount() {
+        synchronized (userList) {
+            return userList.size();
+        }
     }
 
-    @Override
-    public void updateProfile(String username, String email, String password) {
-        this.username = username;
-        this.email = email;
-        this.password = password;
-        System.out.println("Buyer profile updated: " + username);
+    // Copy of the confirmed bookings ordered by booking id
+    public List<Booking> getBookingList() {
+        List<Booking> result = new ArrayList<>(bookings.values());
+        result.sort(Comparator.comparingInt(Booking::getBookingId));
+        return result;
     }
 
-    public void addToWishlist(String property) {
-        wishlist.add(property);
-        System.out.println("Property added to wishlist: " + property);
+    public Booking getBooking(int bookingId) {
+        return bookings.get(bookingId);
     }
 
-    public void setBudgetRange(int budgetRange) {
-        this.budgetRange = budgetRange;
-        System.out.println("Budget range set to: " + budgetRange);
+    public boolean isAvailable(int propertyId, int checkInDay, int checkOutDay) {
+        return calendar.isFree(propertyId, checkInDay, checkOutDay);
     }
 
-    public List<Property> searchProperty(PropertyManagementSystem pms, String criteria) {
-        System.out.println("Searching properties with criteria: " + criteria);
-        List<Property> result = new ArrayList<>();
-        for (Property property : pms.getPropertyList()) {
-            if (property.getLocation().contains(criteria)) {
-                result.add(property);
-            }
-        }
-        return result;
+    // Unbooked stays for a property between two ISO dates, without scanning other bookings
+    public List<DateRange> getFreeWindows(int propertyId, String fromDate, String toDate) {
+        return calendar.freeWindows(propertyId, BookingCalendar.toEpochDay(fromDate), BookingCalendar.toEpochDay(toDate));
     }
 
-    public void viewDetails(Property property) {
-        System.out.println("Viewing details for property: " + property.getPropertyId());
+    public PropertySearchIndex getSearchIndex() {
+        return searchIndex;
     }
-}
-
-// Property class
-class Property {
-    private int propertyId;
-    private String location;
-    private int price;
-    private String type;
-    private boolean available;
 
-    public Property(int propertyId, String location, int price, String type) {
-        this.propertyId = propertyId;
-        this.location = location;
-        this.price = price;
-        this.type = type;
-        this.available = true;
+    public ListingMatcher getListingMatcher() {
+        return listingMatcher;
     }
 
-    public int getPropertyId() {
-        return propertyId;
+    // Publishes this system's table and index sizes as gauges, replacing those of any earlier system
+    public void publishMetrics() {
+        Metrics.gauge("pms.properties", this::getPropertyCount);
+        Metrics.gauge("pms.columns.bytes", () -> readCatalog(columns::estimatedBytes));
+        Metrics.gauge("pms.users", this::getUserCount);
+        Metrics.gauge("pms.bookings", bookings::size);
+        Metrics.gauge("pms.sessions", sessions::size);
+        Metrics.gauge("pms.journalBytesSinceCheckpoint", this::getJournalBytesSinceCheckpoint);
+        Metrics.gauge("index.search.documents", searchIndex::size);
+        Metrics.gauge("index.price.entries", priceIndex::size);
+        Metrics.gauge("index.bitmaps.available", () -> readCatalog(bitmaps::availableCount));
+        Metrics.gauge("index.bitmaps.bytes", () -> readCatalog(bitmaps::sizeInBytes));
+        Metrics.gauge("index.geo.entries", () -> readCatalog(geoIndex::size));
+        Metrics.gauge("index.geo.cells", () -> readCatalog(geoIndex::cellCount));
+        Metrics.gauge("index.facets.types", () -> readCatalog(facets::typeCount));
+        Metrics.gauge("index.facets.locations", () -> readCatalog(facets::locationCount));
+        Metrics.gauge("matcher.standingQueries", listingMatcher::size);
+        Metrics.gauge("matcher.pendingListings", listingMatcher::getPendingCount);
+        SearchResultCache cache = searchIndex.getCache();
+        Metrics.gauge("searchCache.entries", cache::size);
+        Metrics.gauge("searchCache.bytes", cache::getBytes);
+        Metrics.gauge("searchCache.hits", cache::getHitCount);
+        Metrics.gauge("searchCache.misses", cache::getMissCount);
+        Metrics.gauge("searchCache.evictions", cache::getEvictionCount);
+        Metrics.gauge("searchCache.patches", cache::getPatchCount);
     }
 
-    public String getLocation() {
-        return location;
+    private long readCatalog(LongSupplier value) {
+        catalogLock.readLock().lock();
+        try {
+            return value.getAsLong();
+        } finally {
+            catalogLock.readLock().unlock();
+        }
     }
 
-    public int getPrice() {
-        return price;
+    // Registers a listener and replays the current catalog into it
+    public void addCatalogListener(CatalogListener listener) {
+        catalogLock.writeLock().lock();
+        try {
+            catalogListeners.add(listener);
+            properties.forEachValue(listener::propertyAdded);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
     }
 
-    public String getType() {
-        return type;
+    public List<Property> searchProperty(String criteria) {
+        return searchProperty(criteria, true);
     }
 
-    public boolean isAvailable() {
-        return available;
+    // Case-insensitive substring search on location, and on type when includeType is set
+    public List<Property> searchProperty(String criteria, boolean includeType) {
+        long start = System.nanoTime();
+        try {
+            catalogLock.readLock().lock();
+            try {
+                return searchIndex.search(criteria, includeType);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        } finally {
+            SEARCH.recordSince(start);
+        }
     }
 
-    public void setAvailable(boolean available) {
-        this.available = available;
+    // Keyset-paginated searchProperty in index order; cursor is -1 for the first page
+    public SearchPage searchPage(String criteria, boolean includeType, int cursor, int limit) {
+        long start = System.nanoTime();
+        try {
+            catalogLock.readLock().lock();
+            try {
+                return searchIndex.page(criteria, includeType, cursor, limit);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        } finally {
+            SEARCH.recordSince(start);
+        }
     }
 
-    public void updateProperty(String location, int price, String type) throws IOException {
-        this.location = location;
-        this.price = price;
-        this.type = type;
-        FileUtils.writeToFile("properties.txt", "Property updated: " + propertyId);
+    // Streams searchProperty's matches to visitor until it returns false. The visitor runs under the
+    // catalog read lock, so it must not change the catalog.
+    public void forEachMatch(String criteria, boolean includeType, Predicate<Property> visitor) {
+        catalogLock.readLock().lock();
+        try {
+            searchIndex.forEach(criteria, includeType, visitor);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
     }
 
-    public void removeProperty() throws IOException {
-        FileUtils.writeToFile("properties.txt", "Property removed: " + propertyId);
+    // The k cheapest or newest of searchProperty's matches, found with a bounded heap
+    public List<Property> searchTop(String criteria, boolean includeType, SearchOrder order, int k) {
+        long start = System.nanoTime();
+        try {
+            catalogLock.readLock().lock();
+            try {
+                return searchIndex.top(criteria, includeType, order, k);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        } finally {
+            SEARCH_TOP.recordSince(start);
+        }
     }
 
-    public static List<Property> searchProperty(String criteria, List<Property> propertyList) {
-        List<Property> properties = new ArrayList<>();
-        for (Property property : propertyList) {
-            if (property.getLocation().toLowerCase().contains(criteria.toLowerCase()) ||
-                    property.getType().toLowerCase().contains(criteria.toLowerCase())) {
-                properties.add(property);
+    // Properties priced within [minPrice, maxPrice], cheapest first, up to limit. type and location are
+    // optional case-insensitive substrings, as in searchProperty; availableOnly skips unavailable listings.
+    public List<Property> searchByPrice(int minPrice, int maxPrice, String type, String location, boolean availableOnly, int limit) {
+        long start = System.nanoTime();
+        try {
+            String typeQuery = type == null ? null : type.toLowerCase();
+            String locationQuery = location == null ? null : location.toLowerCase();
+            catalogLock.readLock().lock();
+            try {
+                int[] ids = priceIndex.range(minPrice, maxPrice, propertyId -> {
+                    Property property = properties.get(propertyId);
+                    return (!availableOnly || bitmaps.isAvailable(propertyId))
+                            && (typeQuery == null || property.getType().toLowerCase().contains(typeQuery))
+                            && (locationQuery == null || property.getLocation().toLowerCase().contains(locationQuery));
+                }, limit);
+                List<Property> result = new ArrayList<>(ids.length);
+                for (int propertyId : ids) {
+                    result.add(properties.get(propertyId));
+                }
+                return result;
+            } finally {
+                catalogLock.readLock().unlock();
             }
+        } finally {
+            SEARCH_BY_PRICE.recordSince(start);
         }
-        return properties;
     }
-}
-
-// Booking class
-class Booking {
-    private int bookingId;
-    private int propertyId;
-    private String bookingDate;
-    private String checkInDate;
-    private String checkOutDate;
 
-    public Booking(int bookingId, int propertyId, String bookingDate, String checkInDate, String checkOutDate) {
-        this.bookingId = bookingId;
-        this.propertyId = propertyId;
-        this.bookingDate = bookingDate;
-        this.checkInDate = checkInDate;
-        this.checkOutDate = checkOutDate;
+    // Catalog properties with exactly the given location and type (case-insensitive, null for any), limited to
+    // ids when not null, in id order; evaluated as bitmap intersections
+    public List<Property> filterProperties(IntBitmap ids, String location, String type, boolean availableOnly) {
+        catalogLock.readLock().lock();
+        try {
+            List<Property> result = new ArrayList<>();
+            bitmaps.filter(ids, location, type, availableOnly).forEach(propertyId -> {
+                Property property = properties.get(propertyId);
+                if (property != null) {
+                    result.add(property);
+                }
+            });
+            return result;
+        } finally {
+            catalogLock.readLock().unlock();
+        }
     }
 
-    public int getBookingId() {
-        return bookingId;
+    // Listings with coordinates within radiusKm of the point, nearest first, up to limit. Price, type and
+    // availability filter as in searchByPrice.
+    public List<Property> searchNearby(double latitude, double longitude, double radiusKm, int minPrice, int maxPrice,
+            String type, boolean availableOnly, int limit) {
+        long start = System.nanoTime();
+        try {
+            Predicate<Property> filter = listingFilter(minPrice, maxPrice, type, availableOnly);
+            catalogLock.readLock().lock();
+            try {
+                return geoIndex.nearby(latitude, longitude, radiusKm, filter, limit);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        } finally {
+            SEARCH_NEARBY.recordSince(start);
+        }
     }
 
-    public int getPropertyId() {
-        return propertyId;
+    // Listings with coordinates inside the box, nearest its centre first, up to limit; filters as above.
+    // minLongitude greater than maxLongitude means the box crosses the antimeridian.
+    public List<Property> searchWithinBox(double minLatitude, double minLongitude, double maxLatitude,
+            double maxLongitude, int minPrice, int maxPrice, String type, boolean availableOnly, int limit) {
+        long start = System.nanoTime();
+        try {
+            Predicate<Property> filter = listingFilter(minPrice, maxPrice, type, availableOnly);
+            catalogLock.readLock().lock();
+            try {
+                return geoIndex.withinBox(minLatitude, minLongitude, maxLatitude, maxLongitude, filter, limit);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        } finally {
+            SEARCH_NEARBY.recordSince(start);
+        }
     }
 
-    public String getBookingDate() {
-        return bookingDate;
+    private Predicate<Property> listingFilter(int minPrice, int maxPrice, String type, boolean availableOnly) {
+        String typeQuery = type == null ? null : type.toLowerCase();
+        return property -> property.getPrice() >= minPrice && property.getPrice() <= maxPrice
+                && (!availableOnly || bitmaps.isAvailable(property.getPropertyId()))
+                && (typeQuery == null || property.getType().toLowerCase().contains(typeQuery));
     }
 
-    public String getCheckInDate() {
-        return checkInDate;
+    // Listing counts per type and location, price bounds and the price histogram, from aggregates kept
+    // up to date as the catalog changes
+    public CatalogFacets.Summary getFacets() {
+        catalogLock.readLock().lock();
+        try {
+            return facets.summary(priceIndex.priceBounds());
+        } finally {
+            catalogLock.readLock().unlock();
+        }
     }
 
-    public String getCheckOutDate() {
-        return checkOutDate;
+    // The buyer's wishlisted properties that are still listed and available
+    public List<Property> getAvailableWishlist(Buyer buyer) {
+        return filterProperties(buyer.getWishlist(), null, null, true);
     }
 
-    public void cancelBooking() throws IOException {
-        FileUtils.writeToFile("bookings.txt", "Booking cancelled: " + bookingId);
+    // Applies and journals an update of a property in this system, notifying the catalog listeners
+    void updateProperty(Property property, String location, int price, String type) throws IOException {
+        long start = System.nanoTime();
+        try {
+            mutate(() -> {
+                ReentrantLock stripe = calendar.lockFor(property.getPropertyId());
+                stripe.lock();
+                try {
+                    String oldLocation = property.getLocation();
+                    int oldPrice = property.getPrice();
+                    String oldType = property.getType();
+                    catalogLock.writeLock().lock();
+                    try {
+                        property.applyUpdate(location, price, type);
+                        for (CatalogListener listener : catalogListeners) {
+                            listener.propertyUpdated(property, oldLocation, oldPrice, oldType);
+                        }
+                    } finally {
+                        catalogLock.writeLock().unlock();
+                    }
+                    FileUtils.writeToFile(logFile(FileUtils.PROPERTIES_FILE), Records.encode(Records.PROPERTY_UPDATED,
+                            property.getPropertyId(), location, price, type));
+                    if (!location.equals(oldLocation) || price != oldPrice) {
+                        listingMatcher.listingUpdated(property, oldLocation, oldPrice);
+                    }
+                } finally {
+                    stripe.unlock();
+                }
+            });
+        } finally {
+            UPDATE_PROPERTY.recordSince(start);
+        }
     }
 
-    public boolean checkAvailability() {
-        return true;
+    void setCoordinates(Property property, double latitude, double longitude) throws IOException {
+        long start = System.nanoTime();
+        try {
+            mutate(() -> {
+                ReentrantLock stripe = calendar.lockFor(property.getPropertyId());
+                stripe.lock();
+                try {
+                    catalogLock.writeLock().lock();
+                    try {
+                        double oldLatitude = property.getLatitude();
+                        double oldLongitude = property.getLongitude();
+                        property.applyCoordinates(latitude, longitude);
+                        for (CatalogListener listener : catalogListeners) {
+                            listener.coordinatesChanged(property, oldLatitude, oldLongitude);
+                        }
+                    } finally {
+                        catalogLock.writeLock().unlock();
+                    }
+                    FileUtils.writeToFile(logFile(FileUtils.PROPERTIES_FILE), Records.encode(Records.PROPERTY_LOCATED,
+                            property.getPropertyId(), latitude, longitude));
+                } finally {
+                    stripe.unlock();
+                }
+            });
+        } finally {
+            SET_COORDINATES.recordSince(start);
+        }
     }
 
-    public void confirmBooking() throws IOException {
-        FileUtils.writeToFile("bookings.txt", "Booking confirmed: " + bookingId);
+    void setAvailable(Property property, boolean available) throws IOException {
+        long start = System.nanoTime();
+        try {
+            mutate(() -> {
+                ReentrantLock stripe = calendar.lockFor(property.getPropertyId());
+                stripe.lock();
+                try {
+                    catalogLock.writeLock().lock();
+                    try {
+                        if (property.isAvailable() != available) {
+                            property.applyAvailable(available);
+                            for (CatalogListener listener : catalogListeners) {
+                                listener.availabilityChanged(property);
+                            }
+                        }
+                    } finally {
+                        catalogLock.writeLock().unlock();
+                    }
+                    FileUtils.writeToFile(logFile(FileUtils.PROPERTIES_FILE), Records.encode(Records.PROPERTY_AVAILABILITY,
+                            property.getPropertyId(), available));
+                } finally {
+                    stripe.unlock();
+                }
+            });
+        } finally {
+            SET_AVAILABLE.recordSince(start);
+        }
     }
-}
 
-// Property Management System class
-class PropertyManagementSystem {
-    List<Property> propertyList;
-    private List<User> userList;
-    private List<Booking> bookingList;
-
-    public PropertyManagementSystem() {
-        this.propertyList = new ArrayList<>();
-        this.userList = new ArrayList<>();
-        this.bookingList = new ArrayList<>();
+    public void addProperty(Property property) throws IOException {
+        addProperty(property, null);
     }
-    // Getter methods
-    public List<Property> getPropertyList() {
-        return propertyList;
+
+    // Lists the property and, unless seller is null, links it to the seller in the same mutation and
+    // journal append, so a checkpoint or a crash never finds the listing without its owner
+    public void addProperty(Property property, Seller seller) throws IOException {
+        long start = System.nanoTime();
+        try {
+            mutate(() -> {
+                ReentrantLock stripe = calendar.lockFor(property.getPropertyId());
+                stripe.lock();
+                try {
+                    attachProperty(property);
+                    String record = Records.propertyAdded(property);
+                    if (seller != null) {
+                        seller.attachListing(property.getPropertyId());
+                        record += "\n" + Records.encode(Records.LISTING_ADDED, seller.getUserId(), property.getPropertyId());
+                    }
+                    try {
+                        FileUtils.writeToFile(logFile(FileUtils.PROPERTIES_FILE), record);
+                    } catch (IOException e) {
+                        if (seller != null) {
+                            seller.detachListing(property.getPropertyId());
+                        }
+                        detachProperty(property.getPropertyId());
+                        throw e;
+                    }
+                    listingMatcher.listingAdded(property);
+                } finally {
+                    stripe.unlock();
+                }
+            });
+        } finally {
+            ADD_PROPERTY.recordSince(start);
+        }
     }
 
-    public List<User> getUserList() {
-        return userList;
+    public void removeProperty(Property property) throws IOException {
+        removeProperty(property.getPropertyId());
     }
 
-    public List<Booking> getBookingList() {
-        return bookingList;
+    public boolean removeProperty(int propertyId) throws IOException {
+        return removeProperty(propertyId, null);
     }
 
-    public void addProperty(Property property) throws IOException {
-        propertyList.add(property);
-        FileUtils.writeToFile("properties.txt", "Property added to system: " + property.getPropertyId());
+    // Removes the property and, unless seller is null, the seller's link to it, in one journal append
+    public boolean removeProperty(int propertyId, Seller seller) throws IOException {
+        long start = System.nanoTime();
+        try {
+            boolean[] removed = new boolean[1];
+            mutate(() -> {
+                ReentrantLock stripe = calendar.lockFor(propertyId);
+                stripe.lock();
+                try {
+                    if (detachProperty(propertyId) != null) {
+                        removed[0] = true;
+                        String record = Records.encode(Records.PROPERTY_REMOVED, propertyId);
+                        if (seller != null && seller.detachListing(propertyId)) {
+                            record += "\n" + Records.encode(Records.LISTING_REMOVED, seller.getUserId(), propertyId);
+                        }
+                        FileUtils.writeToFile(logFile(FileUtils.PROPERTIES_FILE), record);
+                    }
+                } finally {
+                    stripe.unlock();
+                }
+            });
+            return removed[0];
+        } finally {
+            REMOVE_PROPERTY.recordSince(start);
+        }
     }
 
-    public void removeProperty(Property property) throws IOException {
-        propertyList.remove(property);
-        FileUtils.writeToFile("properties.txt", "Property removed from system: " + property.getPropertyId());
+    public boolean updateProperty(int propertyId, String location, int price, String type) throws IOException {
+        Property property = getProperty(propertyId);
+        if (property == null) {
+            return false;
+        }
+        property.updateProperty(location, price, type);
+        return true;
     }
 
     public void registerUser(User user) throws IOException {
-        userList.add(user);
-        user.register();
+        long start = System.nanoTime();
+        try {
+            mutate(() -> {
+                attachUser(user);
+                user.register();
+            });
+        } finally {
+            REGISTER_USER.recordSince(start);
+        }
     }
 
     public User authenticateUser(String username, String password) {
-        for (User user : userList) {
-            if (user.login(username, password)) {
-                System.out.println("User authenticated: " + username);
+        long start = System.nanoTime();
+        try {
+            User user = usersByName.get(username);
+            if (user != null && user.login(username, password)) {
+                AuditLog.publish(AuditEvent.Type.LOGIN, username);
                 return user;
             }
+            AUTHENTICATION_FAILURES.increment();
+            AuditLog.publish(AuditEvent.Type.LOGIN_FAILED, username);
+            return null;
+        } finally {
+            AUTHENTICATE.recordSince(start);
         }
-        System.out.println("Authentication failed for user: " + username);
-        return null;
     }
 
-    public void processBooking(Booking booking) throws IOException {
-        if (booking.checkAvailability()) {
-            booking.confirmBooking();
-            bookingList.add(booking);
-        } else {
-            System.out.println("Booking failed for property: " + booking.getPropertyId());
+    // Authenticates once and returns a session token, or null if the credentials are wrong
+    public String login(String username, String password) {
+        long start = System.nanoTime();
+        try {
+            User user = authenticateUser(username, password);
+            return user == null ? null : sessions.open(user);
+        } finally {
+            LOGIN.recordSince(start);
+        }
+    }
+
+    // User for a live session token, without checking credentials again
+    public User getSessionUser(String token) {
+        return sessions.resolve(token);
+    }
+
+    public boolean logout(String token) {
+        long start = System.nanoTime();
+        try {
+            return sessions.close(token);
+        } finally {
+            LOGOUT.recordSince(start);
+        }
+    }
+
+    // Atomically checks the stay against the property's calendar and confirms it; safe to call from many threads.
+    // A confirmed booking is on disk before this returns; the fsync waits outside the stripe, so concurrent
+    // bookings share it.
+    public boolean processBooking(Booking booking) throws IOException {
+        long start = System.nanoTime();
+        try {
+            boolean[] confirmed = new boolean[1];
+            long[] sequence = new long[1];
+            mutate(() -> {
+                ReentrantLock stripe = calendar.lockFor(booking.getPropertyId());
+                stripe.lock();
+                try {
+                    if (booking.checkAvailability(this) && attachBooking(booking)) {
+                        try {
+                            sequence[0] = booking.confirmBooking(this);
+                        } catch (IOException e) {
+                            detachBooking(booking);
+                            throw e;
+                        }
+                        confirmed[0] = true;
+                    }
+                } finally {
+                    stripe.unlock();
+                }
+            });
+            if (confirmed[0]) {
+                FileUtils.awaitDurable(logFile(FileUtils.BOOKINGS_FILE), sequence[0]);
+                AuditLog.publish(AuditEvent.Type.BOOKING_CONFIRMED, null, booking.getPropertyId());
+            } else {
+                BOOKINGS_REJECTED.increment();
+                AuditLog.publish(AuditEvent.Type.BOOKING_REJECTED, null, booking.getPropertyId());
+            }
+            return confirmed[0];
+        } finally {
+            PROCESS_BOOKING.recordSince(start);
         }
     }
 
-    public void cancelBooking(Booking booking) throws IOException {
-        booking.cancelBooking();
-        bookingList.remove(booking);
+    // Cancels a confirmed booking exactly once, even when raced by other cancels or bookings, and durably
+    public boolean cancelBooking(Booking booking) throws IOException {
+        long start = System.nanoTime();
+        try {
+            boolean[] cancelled = new boolean[1];
+            long[] sequence = new long[1];
+            mutate(() -> {
+                ReentrantLock stripe = calendar.lockFor(booking.getPropertyId());
+                stripe.lock();
+                try {
+                    if (detachBooking(booking)) {
+                        sequence[0] = booking.cancelBooking(this);
+                        cancelled[0] = true;
+                    }
+                } finally {
+                    stripe.unlock();
+                }
+            });
+            if (cancelled[0]) {
+                FileUtils.awaitDurable(logFile(FileUtils.BOOKINGS_FILE), sequence[0]);
+                AuditLog.publish(AuditEvent.Type.BOOKING_CANCELLED, null, booking.getPropertyId());
+            }
+            return cancelled[0];
+        } finally {
+            CANCEL_BOOKING.recordSince(start);
+        }
     }
 }
 
 
 // Main class to run the system
 public class Main {
-    private static PropertyManagementSystem pms = new PropertyManagementSystem();
+    private static PropertyManagementSystem pms;
     private static Scanner scanner = new Scanner(System.in);
+    private static final int PAGE_SIZE = 20;
 
+    // Pass --server [port] to serve the operations over HTTP instead of the interactive menu, or
+    // --workload [key=value ...] to run a load test in its own data directory (see WorkloadDriver)
     public static void main(String[] args) {
         try {
+            if (args.length > 0 && args[0].equals("--workload")) {
+                runWorkload(args);
+                return;
+            }
+            pms = PropertyManagementSystem.recover();
+            pms.publishMetrics();
+            if (args.length > 0 && args[0].equals("--server")) {
+                runServer(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--import")) {
+                if (args.length < 3) {
+                    System.out.println("Usage: --import properties|sellers|buyers|bookings <file>");
+                    return;
+                }
+                runImport(args[1], args[2]);
+                return;
+            }
             while (true) {
+                AuditLog.flush();
                 System.out.println("Welcome to the Property Management System");
                 System.out.println("1. Register");
                 System.out.println("2. Login");
@@ -386,6 +1854,7 @@ public class Main {
                         loginUser();
                         break;
                     case 3:
+                        pms.checkpoint();
                         System.out.println("Exiting...");
                         return;
                     default:
@@ -397,6 +1866,62 @@ public class Main {
         }
     }
 
+    private static void runWorkload(String[] args) throws IOException {
+        WorkloadDriver.Options options;
+        try {
+            options = WorkloadDriver.Options.parse(args, 1);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Usage: --workload [threads=n] [rate=ops/s] [seconds=s | ops=n] [script=file] [record=file]"
+                    + " [sellers=n] [buyers=n] [properties=n] [seed=n] [dataDir=dir] [shards=n]");
+            System.out.println(e.getMessage());
+            return;
+        }
+        // Audit lines for every operation would swamp the report
+        if (System.getProperty("audit.sinks") == null) {
+            System.setProperty("audit.sinks", "none");
+        }
+        WorkloadDriver.run(options);
+    }
+
+    private static void runImport(String kind, String file) throws IOException {
+        BulkImporter.Kind importKind;
+        try {
+            importKind = BulkImporter.Kind.valueOf(kind.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown import kind: " + kind);
+            return;
+        }
+        long start = System.nanoTime();
+        ImportResult result;
+        try {
+            result = new BulkImporter(pms).importFile(Paths.get(file), importKind);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Import failed: " + e.getMessage());
+            return;
+        }
+        pms.checkpoint();
+        for (String error : result.getErrors()) {
+            System.out.println("Rejected " + error);
+        }
+        System.out.printf("Imported %d of %d rows (%d rejected) in %d ms%n", result.getImported(), result.getRows(),
+                result.getRejected(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void runServer(int port) throws IOException {
+        PropertyServer server = new PropertyServer(pms, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            try {
+                pms.checkpoint();
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+            AuditLog.flush();
+        }, "server-shutdown"));
+        server.start();
+        System.out.println("Serving on port " + server.getPort());
+    }
+
     private static void registerUser() throws IOException {
         System.out.println("Register as: 1. Seller  2. Buyer");
         int userType = scanner.nextInt();
@@ -404,6 +1929,10 @@ public class Main {
 
         System.out.print("Enter username: ");
         String username = scanner.nextLine();
+        if (pms.findUser(username) != null) {
+            System.out.println("Username already taken. Registration failed.");
+            return;
+        }
         System.out.print("Enter email: ");
         String email = scanner.nextLine();
         System.out.print("Enter password: ");
@@ -416,7 +1945,7 @@ public class Main {
             int rating = scanner.nextInt();
             scanner.nextLine(); // Consume newline
 
-            Seller seller = new Seller(pms.getUserList().size() + 1, username, email, password, contactInfo, rating);
+            Seller seller = new Seller(pms.nextUserId(), username, email, password, contactInfo, rating);
             pms.registerUser(seller);
             System.out.println("Seller registered successfully!");
 
@@ -427,7 +1956,7 @@ public class Main {
             System.out.print("Enter location wanted: ");
             String locationWanted = scanner.nextLine();
 
-            Buyer buyer = new Buyer(pms.getUserList().size() + 1, username, email, password, budgetRange, locationWanted);
+            Buyer buyer = new Buyer(pms.nextUserId(), username, email, password, budgetRange, locationWanted);
             pms.registerUser(buyer);
             System.out.println("Buyer registered successfully!");
 
@@ -454,6 +1983,7 @@ public class Main {
 
     private static void sellerMenu(Seller seller) throws IOException {
         while (true) {
+            AuditLog.flush();
             System.out.println("Seller Menu");
             System.out.println("1. Add Property");
             System.out.println("2. Remove Property");
@@ -469,6 +1999,10 @@ public class Main {
                     System.out.print("Enter property ID: ");
                     int propertyId = scanner.nextInt();
                     scanner.nextLine(); // Consume newline
+                    if (pms.containsProperty(propertyId)) {
+                        System.out.println("Property ID already exists.");
+                        break;
+                    }
                     System.out.print("Enter location: ");
                     String location = scanner.nextLine();
                     System.out.print("Enter price: ");
@@ -478,8 +2012,7 @@ public class Main {
                     String type = scanner.nextLine();
 
                     Property property = new Property(propertyId, location, price, type);
-                    seller.addProperty(property);
-                    pms.addProperty(property);
+                    pms.addProperty(property, seller);
                     System.out.println("Property added successfully!");
                     break;
 
@@ -487,25 +2020,33 @@ public class Main {
                     System.out.print("Enter property ID to remove: ");
                     propertyId = scanner.nextInt();
                     scanner.nextLine(); // Consume newline
-                    property = new Property(propertyId, "", 0, "");
-                    seller.removeProperty(property);
-                    pms.removeProperty(property);
+                    property = pms.getProperty(propertyId);
+                    if (property == null) {
+                        System.out.println("Property not found.");
+                        break;
+                    }
+                    if (!seller.ownsListing(propertyId)) {
+                        System.out.println("You can only remove your own listings.");
+                        break;
+                    }
+                    pms.removeProperty(propertyId, seller);
                     System.out.println("Property removed successfully!");
                     break;
 
                 case 3:
                     System.out.print("Enter search criteria: ");
                     String criteria = scanner.nextLine();
-                    List<Property> properties = seller.searchProperty(criteria);
-                    System.out.println("Search results:");
-                    for (Property prop : properties) {
-                        System.out.println("ID: " + prop.getPropertyId() + ", Location: " + prop.getLocation() + ", Price: " + prop.getPrice() + ", Type: " + prop.getType());
-                    }
+                    printPages((offset, limit) -> seller.searchProperty(criteria, offset, limit));
                     break;
 
                 case 4:
                     System.out.print("Enter new username: ");
                     String newUsername = scanner.nextLine();
+                    User holder = pms.findUser(newUsername);
+                    if (holder != null && holder != seller) {
+                        System.out.println("Username already taken.");
+                        break;
+                    }
                     System.out.print("Enter new email: ");
                     String newEmail = scanner.nextLine();
                     System.out.print("Enter new password: ");
@@ -523,14 +2064,38 @@ public class Main {
             }
         }
     }
+    // Prints search results a page at a time, asking before fetching each further page
+    private static void printPages(BiFunction<Integer, Integer, List<Property>> search) {
+        System.out.println("Search results:");
+        for (int offset = 0; ; offset += PAGE_SIZE) {
+            List<Property> page = search.apply(offset, PAGE_SIZE + 1);
+            for (int i = 0; i < Math.min(PAGE_SIZE, page.size()); i++) {
+                Property property = page.get(i);
+                System.out.println("ID: " + property.getPropertyId() + ", Location: " + property.getLocation() + ", Price: " + property.getPrice() + ", Type: " + property.getType());
+            }
+            if (page.size() <= PAGE_SIZE) {
+                return;
+            }
+            System.out.print("Show more results? (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                return;
+            }
+        }
+    }
+
     private static void buyerMenu(Buyer buyer) throws IOException {
         while (true) {
+            AuditLog.flush();
+            for (String notification : buyer.takeNotifications()) {
+                System.out.println(notification);
+            }
             System.out.println("Buyer Menu");
             System.out.println("1. Search Property");
             System.out.println("2. View Property Details");
             System.out.println("3. Add Property to Wishlist");
-            System.out.println("4. Update Profile");
-            System.out.println("5. Logout");
+            System.out.println("4. View Available Wishlist Properties");
+            System.out.println("5. Update Profile");
+            System.out.println("6. Logout");
             System.out.print("Choose an option: ");
             int choice = scanner.nextInt();
             scanner.nextLine(); // Consume newline
@@ -539,24 +2104,14 @@ public class Main {
                 case 1:
                     System.out.print("Enter search criteria: ");
                     String criteria = scanner.nextLine();
-                    List<Property> properties = buyer.searchProperty(pms, criteria);
-                    System.out.println("Search results:");
-                    for (Property property : properties) {
-                        System.out.println("ID: " + property.getPropertyId() + ", Location: " + property.getLocation() + ", Price: " + property.getPrice() + ", Type: " + property.getType());
-                    }
+                    printPages((offset, limit) -> buyer.searchProperty(pms, criteria, offset, limit));
                     break;
 
                 case 2:
                     System.out.print("Enter property ID to view details: ");
                     int propertyId = scanner.nextInt();
                     scanner.nextLine(); // Consume newline
-                    Property propertyToView = null;
-                    for (Property property : pms.propertyList) {
-                        if (property.getPropertyId() == propertyId) {
-                            propertyToView = property;
-                            break;
-                        }
-                    }
+                    Property propertyToView = pms.getProperty(propertyId);
                     if (propertyToView != null) {
                         buyer.viewDetails(propertyToView);
                     } else {
@@ -568,12 +2123,27 @@ public class Main {
                     System.out.print("Enter property ID to add to wishlist: ");
                     propertyId = scanner.nextInt();
                     scanner.nextLine(); // Consume newline
-                    buyer.addToWishlist("Property ID: " + propertyId);
+                    buyer.addToWishlist(propertyId);
                     break;
 
                 case 4:
+                    List<Property> available = pms.getAvailableWishlist(buyer);
+                    if (available.isEmpty()) {
+                        System.out.println("No wishlisted properties are available.");
+                    }
+                    for (Property property : available) {
+                        System.out.println("ID: " + property.getPropertyId() + ", Location: " + property.getLocation() + ", Price: " + property.getPrice() + ", Type: " + property.getType());
+                    }
+                    break;
+
+                case 5:
                     System.out.print("Enter new username: ");
                     String newUsername = scanner.nextLine();
+                    User holder = pms.findUser(newUsername);
+                    if (holder != null && holder != buyer) {
+                        System.out.println("Username already taken.");
+                        break;
+                    }
                     System.out.print("Enter new email: ");
                     String newEmail = scanner.nextLine();
                     System.out.print("Enter new password: ");
@@ -582,7 +2152,7 @@ public class Main {
                     System.out.println("Profile updated successfully!");
                     break;
 
-                case 5:
+                case 6:
                     buyer.logout();
                     return;
 
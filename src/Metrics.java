@@ -0,0 +1,283 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+// Log-linear latency histogram in the style of HdrHistogram: 32 linear sub-buckets per power of two
+// (about 3% relative error) in one atomic array, so recording is a shift and one atomic add
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(index(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    // Records the time elapsed since a System.nanoTime() reading
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    // Upper bound of the bucket holding the given quantile (0 to 1), in nanoseconds
+    public long getPercentile(double quantile) {
+        long[] counts = new long[buckets.length()];
+        long n = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    // Not atomic with concurrent records; a few in-flight samples may survive or be lost
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    private static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    private static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = (index & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
+
+// Process-wide registry of named latency histograms, counters and gauges.
+// Everything is published as attributes of one MBean, realestate:type=Metrics, unless -Dmetrics.jmx=false,
+// and -Dmetrics.dumpMillis=<t> prints a report to stderr every t milliseconds.
+class Metrics {
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    static {
+        if (!"false".equals(System.getProperty("metrics.jmx"))) {
+            registerMBean();
+        }
+        long dumpMillis = Long.getLong("metrics.dumpMillis", 0);
+        if (dumpMillis > 0) {
+            startDump(dumpMillis);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    // Replaces any gauge already registered under the name
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+            histogram.reset();
+        }
+        for (LongAdder counter : COUNTERS.values()) {
+            counter.reset();
+        }
+    }
+
+    // One line per metric; latencies in microseconds
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry : HISTOGRAMS.entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            if (h.getCount() == 0) {
+                continue;
+            }
+            sb.append(String.format("%s count=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n",
+                    entry.getKey(), h.getCount(), h.getMean() / 1000, h.getPercentile(0.5) / 1000.0,
+                    h.getPercentile(0.99) / 1000.0, h.getPercentile(0.999) / 1000.0, h.getMax() / 1000.0));
+        }
+        for (Map.Entry<String, LongAdder> entry : COUNTERS.entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue().sum()).append(System.lineSeparator());
+        }
+        for (Map.Entry<String, LongSupplier> entry : GAUGES.entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue().getAsLong()).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private static void startDump(long millis) {
+        Thread dumper = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.err.print(report());
+            }
+        }, "metrics-dump");
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
+    private static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("realestate:type=Metrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+        } catch (JMException | SecurityException e) {
+            System.err.println("Metrics not published over JMX: " + e.getMessage());
+        }
+    }
+
+    // Current attribute values by name; histograms expand to count, mean, p50, p99, p999 and max
+    private static Map<String, Supplier<Object>> attributes() {
+        Map<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : HISTOGRAMS.entrySet()) {
+            String name = entry.getKey();
+            LatencyHistogram h = entry.getValue();
+            attributes.put(name + ".count", h::getCount);
+            attributes.put(name + ".meanMicros", () -> h.getMean() / 1000);
+            attributes.put(name + ".p50Micros", () -> h.getPercentile(0.5) / 1000.0);
+            attributes.put(name + ".p99Micros", () -> h.getPercentile(0.99) / 1000.0);
+            attributes.put(name + ".p999Micros", () -> h.getPercentile(0.999) / 1000.0);
+            attributes.put(name + ".maxMicros", () -> h.getMax() / 1000.0);
+        }
+        for (Map.Entry<String, LongAdder> entry : COUNTERS.entrySet()) {
+            LongAdder counter = entry.getValue();
+            attributes.put(entry.getKey(), counter::sum);
+        }
+        for (Map.Entry<String, LongSupplier> entry : GAUGES.entrySet()) {
+            LongSupplier gauge = entry.getValue();
+            attributes.put(entry.getKey(), gauge::getAsLong);
+        }
+        return attributes;
+    }
+
+    // Read-only view of the registry whose attribute set grows as metrics are created
+    private static class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Supplier<Object> value = attributes().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value.get();
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Supplier<Object>> attributes = attributes();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                Supplier<Object> value = attributes.get(name);
+                if (value != null) {
+                    list.add(new Attribute(name, value.get()));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if (actionName.equals("reset")) {
+                Metrics.reset();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            for (Map.Entry<String, Supplier<Object>> entry : attributes().entrySet()) {
+                String name = entry.getKey();
+                String type = name.endsWith("Micros") ? Double.class.getName() : Long.class.getName();
+                infos.add(new MBeanAttributeInfo(name, type, name, true, false, false));
+            }
+            MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Clears histograms and counters",
+                    null, "void", MBeanOperationInfo.ACTION);
+            return new MBeanInfo(Metrics.class.getName(), "Real estate operation metrics",
+                    infos.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] {reset}, null);
+        }
+    }
+}
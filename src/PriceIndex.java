@@ -0,0 +1,122 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+// Sorted array of (price, propertyId) pairs packed into longs, so a price range is a binary
+// search for its start followed by a walk over adjacent entries. Also usable for any (amount, id) pairs.
+class PriceIndex implements CatalogListener {
+    private long[] entries = new long[16];
+    private int size;
+
+    @Override
+    public void propertyAdded(Property property) {
+        add(property.getPrice(), property.getPropertyId());
+    }
+
+    @Override
+    public void propertyRemoved(Property property) {
+        remove(property.getPrice(), property.getPropertyId());
+    }
+
+    @Override
+    public void propertyUpdated(Property property, String oldLocation, int oldPrice, String oldType) {
+        if (oldPrice != property.getPrice()) {
+            remove(oldPrice, property.getPropertyId());
+            add(property.getPrice(), property.getPropertyId());
+        }
+    }
+
+    // Sorts the batch and merges it in one pass instead of shifting the array once per property
+    @Override
+    public void propertiesAdded(List<Property> properties) {
+        long[] added = new long[properties.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = key(properties.get(i).getPrice(), properties.get(i).getPropertyId());
+        }
+        Arrays.sort(added);
+        long[] merged = new long[Math.max(16, size + added.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < added.length) {
+            long next;
+            if (j == added.length || (i < size && entries[i] <= added[j])) {
+                next = entries[i++];
+            } else {
+                next = added[j++];
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        entries = merged;
+        size = count;
+    }
+
+    public void add(int price, int id) {
+        insert(key(price, id));
+    }
+
+    public void remove(int price, int id) {
+        delete(key(price, id));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Ids priced within [minPrice, maxPrice] that pass accept, cheapest first, at most limit of them
+    public int[] range(int minPrice, int maxPrice, IntPredicate accept, int limit) {
+        if (minPrice > maxPrice || limit <= 0) {
+            return new int[0];
+        }
+        int[] result = new int[Math.min(limit, 64)];
+        int count = 0;
+        int pos = Arrays.binarySearch(entries, 0, size, key(minPrice, Integer.MIN_VALUE));
+        for (int i = pos >= 0 ? pos : -pos - 1; i < size && count < limit; i++) {
+            if ((int) (entries[i] >> 32) > maxPrice) {
+                break;
+            }
+            int propertyId = (int) entries[i] ^ Integer.MIN_VALUE;
+            if (accept.test(propertyId)) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, Math.min(limit, count * 2));
+                }
+                result[count++] = propertyId;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // {lowest, highest} price, or null when empty
+    public int[] priceBounds() {
+        return size == 0 ? null : new int[] {(int) (entries[0] >> 32), (int) (entries[size - 1] >> 32)};
+    }
+
+    // Flipping the id's sign bit makes equal-priced entries sort by signed id
+    private static long key(int price, int propertyId) {
+        return ((long) price << 32) | ((propertyId ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    private void insert(long key) {
+        int pos = Arrays.binarySearch(entries, 0, size, key);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        System.arraycopy(entries, pos, entries, pos + 1, size - pos);
+        entries[pos] = key;
+        size++;
+    }
+
+    private void delete(long key) {
+        int pos = Arrays.binarySearch(entries, 0, size, key);
+        if (pos >= 0) {
+            System.arraycopy(entries, pos + 1, entries, pos, size - pos - 1);
+            size--;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+// Trigram inverted index mapping each 3-char window of a text to the sorted doc ids containing it
+class NgramIndex {
+    static final int N = 3;
+
+    private static class Postings {
+        int[] docs = new int[4];
+        int size;
+
+        void insert(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            System.arraycopy(docs, pos, docs, pos + 1, size - pos);
+            docs[pos] = doc;
+            size++;
+        }
+
+        void delete(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos >= 0) {
+                System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+                size--;
+            }
+        }
+    }
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    public void add(int doc, String text) {
+        for (int i = 0; i + N <= text.length(); i++) {
+            postings.computeIfAbsent(key(text, i), k -> new Postings()).insert(doc);
+        }
+    }
+
+    public void remove(int doc, String text) {
+        for (int i = 0; i + N <= text.length(); i++) {
+            Long key = key(text, i);
+            Postings p = postings.get(key);
+            if (p != null) {
+                p.delete(doc);
+                if (p.size == 0) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return postings.size();
+    }
+
+    // Sorted doc ids whose text contains every trigram of query; query must be at least N chars
+    public int[] candidates(String query) {
+        int grams = query.length() - N + 1;
+        Postings[] lists = new Postings[grams];
+        for (int i = 0; i < grams; i++) {
+            Postings p = postings.get(key(query, i));
+            if (p == null) {
+                return new int[0];
+            }
+            lists[i] = p;
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        int[] result = Arrays.copyOf(lists[0].docs, lists[0].size);
+        int size = result.length;
+        for (int i = 1; i < lists.length && size > 0; i++) {
+            size = intersect(result, size, lists[i]);
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    // Intersects result[0..size) in place with p, binary searching forward through p
+    private static int intersect(int[] result, int size, Postings p) {
+        int out = 0;
+        int from = 0;
+        for (int i = 0; i < size && from < p.size; i++) {
+            int pos = Arrays.binarySearch(p.docs, from, p.size, result[i]);
+            if (pos >= 0) {
+                result[out++] = result[i];
+                from = pos + 1;
+            } else {
+                from = -pos - 1;
+            }
+        }
+        return out;
+    }
+
+    private static long key(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+}
+
+// Orderings for top-k search results
+enum SearchOrder {
+    CHEAPEST,
+    NEWEST
+}
+
+// One page of matches in doc id order; pass nextCursor back for the following page, -1 when there is none
+class SearchPage {
+    private final List<Property> items;
+    private final int nextCursor;
+
+    SearchPage(List<Property> items, int nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Property> getItems() {
+        return items;
+    }
+
+    public int getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor >= 0;
+    }
+}
+
+// Incrementally maintained search index over lower-cased property location and type, with a result
+// cache in front sized by -Dsearch.cache.entries (0 disables it) and -Dsearch.cache.bytes. Results come
+// in doc id order. Ids of removed listings go on a free list and are handed to later ones, so the arrays
+// are sized by the most listings ever live at once; doc id order is therefore insertion order only until
+// the first removal, and recency is tracked separately for NEWEST.
+class PropertySearchIndex implements CatalogListener {
+    // Largest page or top-k a caller may ask for
+    static final int MAX_PAGE = 1000;
+
+    private final NgramIndex locationIndex = new NgramIndex();
+    private final NgramIndex typeIndex = new NgramIndex();
+    private final SearchResultCache cache = new SearchResultCache(Integer.getInteger("search.cache.entries", 1024),
+            Long.getLong("search.cache.bytes", 8L << 20));
+    private final Map<Property, Integer> docIds = new IdentityHashMap<>();
+    private Property[] docs = new Property[16];
+    private String[] locations = new String[16];
+    private String[] types = new String[16];
+    // Order in which the live docs were added, higher is newer
+    private int[] ages = new int[16];
+    private int[] freeDocs = new int[16];
+    private int freeCount;
+    // Ids below nextDoc have been handed out; those not on the free list are live
+    private int nextDoc;
+    private int liveDocs;
+    private int nextAge;
+
+    @Override
+    public void propertyAdded(Property property) {
+        if (docIds.containsKey(property)) {
+            return;
+        }
+        int doc;
+        if (freeCount > 0) {
+            doc = freeDocs[--freeCount];
+        } else {
+            doc = nextDoc++;
+            if (doc == docs.length) {
+                docs = Arrays.copyOf(docs, doc * 2);
+                locations = Arrays.copyOf(locations, doc * 2);
+                types = Arrays.copyOf(types, doc * 2);
+                ages = Arrays.copyOf(ages, doc * 2);
+            }
+        }
+        if (nextAge == Integer.MAX_VALUE) {
+            renumberAges();
+        }
+        docIds.put(property, doc);
+        docs[doc] = property;
+        ages[doc] = nextAge++;
+        index(doc, property);
+        liveDocs++;
+        cache.added(doc, locations[doc], types[doc]);
+    }
+
+    @Override
+    public void propertyRemoved(Property property) {
+        Integer doc = docIds.remove(property);
+        if (doc != null) {
+            cache.removed(doc, locations[doc], types[doc]);
+            unindex(doc);
+            docs[doc] = null;
+            liveDocs--;
+            if (freeCount == freeDocs.length) {
+                freeDocs = Arrays.copyOf(freeDocs, freeCount * 2);
+            }
+            freeDocs[freeCount++] = doc;
+        }
+    }
+
+    // Packs the live docs' ages into 0..liveDocs-1, keeping their order, once the counter runs out
+    private void renumberAges() {
+        long[] byAge = new long[liveDocs];
+        int count = 0;
+        for (int doc = 0; doc < nextDoc; doc++) {
+            if (docs[doc] != null) {
+                byAge[count++] = ((long) ages[doc] << 32) | doc;
+            }
+        }
+        Arrays.sort(byAge);
+        for (int i = 0; i < count; i++) {
+            ages[(int) byAge[i]] = i;
+        }
+        nextAge = count;
+    }
+
+    @Override
+    public void propertyUpdated(Property property, String oldLocation, int oldPrice, String oldType) {
+        Integer doc = docIds.get(property);
+        if (doc != null) {
+            String previousLocation = locations[doc];
+            String previousType = types[doc];
+            unindex(doc);
+            index(doc, property);
+            cache.updated(doc, previousLocation, previousType, locations[doc], types[doc]);
+        }
+    }
+
+    public int size() {
+        return liveDocs;
+    }
+
+    public SearchResultCache getCache() {
+        return cache;
+    }
+
+    // Same matches as Property.searchProperty over the indexed list, in doc id order
+    public List<Property> search(String criteria) {
+        return search(criteria, true);
+    }
+
+    // Case-insensitive substring match on location, and on type when includeType is set
+    public List<Property> search(String criteria, boolean includeType) {
+        String query = criteria.toLowerCase();
+        int[] matched = cache.get(query, includeType);
+        if (matched == null) {
+            matched = matchingDocs(query, includeType);
+            cache.put(query, includeType, matched);
+        }
+        List<Property> result = new ArrayList<>(matched.length);
+        for (int doc : matched) {
+            result.add(docs[doc]);
+        }
+        return result;
+    }
+
+    // Keyset pagination over doc id order: up to limit matches after the cursor, -1 for the first page.
+    // Cost follows the page size, not the match count, once a query is cached or for short queries. A
+    // listing added mid-walk under a freed id below the cursor is not returned, as for any keyset walk.
+    public SearchPage page(String criteria, boolean includeType, int cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE) {
+            throw new IllegalArgumentException("Page limit must be between 1 and " + MAX_PAGE + ": " + limit);
+        }
+        int[] matched = matchesAfter(criteria.toLowerCase(), includeType, cursor, limit + 1, true);
+        int count = Math.min(limit, matched.length);
+        List<Property> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(docs[matched[i]]);
+        }
+        return new SearchPage(items, matched.length > limit ? matched[count - 1] : -1);
+    }
+
+    // Streams matches in doc id order to visitor until it returns false, without building a result list
+    public void forEach(String criteria, boolean includeType, Predicate<Property> visitor) {
+        forEachDoc(criteria.toLowerCase(), includeType, doc -> visitor.test(docs[doc]));
+    }
+
+    private void forEachDoc(String query, boolean includeType, IntPredicate visitor) {
+        int after = -1;
+        while (true) {
+            int[] matched = matchesAfter(query, includeType, after, 256, after == -1);
+            for (int doc : matched) {
+                if (!visitor.test(doc)) {
+                    return;
+                }
+            }
+            if (matched.length < 256) {
+                return;
+            }
+            after = matched[matched.length - 1];
+        }
+    }
+
+    // The k best matches in the given order; a bounded heap keeps memory at O(min(k, matches)) for any
+    // match count. Ties on price go to the lower doc id.
+    public List<Property> top(String criteria, boolean includeType, SearchOrder order, int k) {
+        String query = criteria.toLowerCase();
+        List<Property> result = new ArrayList<>();
+        if (k <= 0) {
+            return result;
+        }
+        boolean newest = order == SearchOrder.NEWEST;
+        // The heap grows as it fills, so a large k costs nothing unless there are that many matches
+        long[][] heap = {new long[Math.min(k, 64)]};
+        int[] size = new int[1];
+        forEachDoc(query, includeType, doc -> {
+            // Smallest keys win: the lowest price, or the highest age
+            long key = ((long) (newest ? Integer.MAX_VALUE - ages[doc] : docs[doc].getPrice()) << 32) | doc;
+            if (size[0] < k) {
+                if (size[0] == heap[0].length) {
+                    heap[0] = Arrays.copyOf(heap[0], (int) Math.min(k, size[0] * 2L));
+                }
+                heap[0][size[0]] = key;
+                siftUp(heap[0], size[0]++);
+            } else if (key < heap[0][0]) {
+                heap[0][0] = key;
+                siftDown(heap[0], size[0]);
+            }
+            return true;
+        });
+        long[] best = Arrays.copyOf(heap[0], size[0]);
+        Arrays.sort(best);
+        for (long key : best) {
+            result.add(docs[(int) key]);
+        }
+        return result;
+    }
+
+    // Up to limit matching doc ids greater than afterDoc, ascending; counted is passed to the cache's statistics
+    private int[] matchesAfter(String query, boolean includeType, int afterDoc, int limit, boolean counted) {
+        int[] cached = cache.slice(query, includeType, afterDoc, limit, counted);
+        if (cached != null) {
+            return cached;
+        }
+        if (query.length() < NgramIndex.N) {
+            // Scanning stops once the page is full, so partial scans are not cached
+            int[] result = new int[Math.min(limit, 64)];
+            int count = 0;
+            for (int doc = Math.max(afterDoc + 1, 0); doc < nextDoc && count < limit; doc++) {
+                if (docs[doc] != null && matches(doc, query, includeType)) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, (int) Math.min(limit, count * 2L));
+                    }
+                    result[count++] = doc;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+        int[] matched = matchingDocs(query, includeType);
+        cache.put(query, includeType, matched);
+        int pos = Arrays.binarySearch(matched, afterDoc);
+        int from = pos >= 0 ? pos + 1 : -pos - 1;
+        return Arrays.copyOfRange(matched, from, from + Math.min(limit, matched.length - from));
+    }
+
+    // Max-heap on the packed (price or age, doc) keys
+    private static void siftUp(long[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] >= heap[i]) {
+                return;
+            }
+            long t = heap[parent];
+            heap[parent] = heap[i];
+            heap[i] = t;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && heap[left] > heap[largest]) {
+                largest = left;
+            }
+            if (right < size && heap[right] > heap[largest]) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+            long t = heap[largest];
+            heap[largest] = heap[i];
+            heap[i] = t;
+            i = largest;
+        }
+    }
+
+    // Sorted ids of live docs matching the lower-cased query
+    private int[] matchingDocs(String query, boolean includeType) {
+        int[] result = new int[16];
+        int count = 0;
+        if (query.length() < NgramIndex.N) {
+            for (int doc = 0; doc < nextDoc; doc++) {
+                if (docs[doc] != null && matches(doc, query, includeType)) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = doc;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+        int[] byLocation = locationIndex.candidates(query);
+        int[] byType = includeType ? typeIndex.candidates(query) : new int[0];
+        int i = 0;
+        int j = 0;
+        while (i < byLocation.length || j < byType.length) {
+            int doc;
+            if (j == byType.length || (i < byLocation.length && byLocation[i] < byType[j])) {
+                doc = byLocation[i++];
+            } else if (i == byLocation.length || byType[j] < byLocation[i]) {
+                doc = byType[j++];
+            } else {
+                doc = byLocation[i++];
+                j++;
+            }
+            if (matches(doc, query, includeType)) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = doc;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private boolean matches(int doc, String query, boolean includeType) {
+        return locations[doc].contains(query) || (includeType && types[doc].contains(query));
+    }
+
+    private void index(int doc, Property property) {
+        locations[doc] = property.getLocation().toLowerCase();
+        types[doc] = property.getType().toLowerCase();
+        locationIndex.add(doc, locations[doc]);
+        typeIndex.add(doc, types[doc]);
+    }
+
+    private void unindex(int doc) {
+        locationIndex.remove(doc, locations[doc]);
+        typeIndex.remove(doc, types[doc]);
+        locations[doc] = null;
+        types[doc] = null;
+    }
+}
@@ -0,0 +1,427 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Headless HTTP front end exposing the menu operations against a shared PropertyManagementSystem.
+// Parameters come from the query string or a form body; responses are plain text lines. Page sizes
+// (limit, k) run from 1 to 1000 and offsets from 0; other values are rejected with 400.
+//
+//   POST   /register      type=seller|buyer, username, email, password, contactInfo, rating | budgetRange, locationWanted
+//   POST   /login         username, password -> session token
+//   POST   /logout        token
+//   POST   /profile       token, username, email, password
+//   GET    /search        criteria [, token: searches as that seller or buyer] [, offset, limit (default 100)]
+//   GET    /search/page   criteria [, cursor, limit] -> a page in index order, then "next: <cursor>" if more remain
+//   GET    /search/top    criteria, order=cheapest|newest [, k]
+//   GET    /search/price  minPrice, maxPrice [, type, location, availableOnly, limit]
+//   GET    /search/nearby latitude, longitude, radiusKm (finite, >= 0) [, minPrice, maxPrice, type, availableOnly, limit]
+//   GET    /search/box    minLatitude, minLongitude, maxLatitude, maxLongitude [, minPrice, maxPrice, type, availableOnly, limit]
+//   GET    /facets        -> listing counts per type and location, price range and price histogram
+//   GET    /property      id
+//   POST   /property      token (seller), propertyId, location, price, type [, latitude, longitude]
+//   DELETE /property      token (seller), id
+//   POST   /wishlist      token (buyer), propertyId
+//   GET    /wishlist      token (buyer) -> the wishlisted properties that are still available
+//   GET    /notifications token (buyer) -> listings matching the buyer's budget and location since the last call
+//   POST   /booking       token, propertyId, checkIn, checkOut (yyyy-MM-dd) -> booking id
+//   DELETE /booking       token (who made the booking, or the listing's seller), id
+class PropertyServer {
+    private static class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final PropertyManagementSystem pms;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public PropertyServer(PropertyManagementSystem pms, int port) throws IOException {
+        this.pms = pms;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    // One virtual thread per request where the JDK has them (21+), otherwise a cached platform pool
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            body = dispatch(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), parameters(exchange));
+        } catch (RequestException e) {
+            status = e.status;
+            body = e.getMessage();
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = e.getMessage();
+        } catch (IOException | RuntimeException e) {
+            status = 500;
+            body = "Error: " + e.getMessage();
+        }
+        byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String dispatch(String method, String path, Map<String, String> params) throws IOException {
+        switch (method + " " + path) {
+            case "POST /register":
+                return register(params);
+            case "POST /login": {
+                String token = pms.login(required(params, "username"), required(params, "password"));
+                if (token == null) {
+                    throw new RequestException(401, "Authentication failed");
+                }
+                return token;
+            }
+            case "POST /logout":
+                return pms.logout(params.get("token")) ? "Logged out" : "No such session";
+            case "POST /profile": {
+                User user = sessionUser(params);
+                String username = required(params, "username");
+                User holder = pms.findUser(username);
+                if (holder != null && holder != user) {
+                    throw new RequestException(409, "Username already taken");
+                }
+                user.updateProfile(username, required(params, "email"), required(params, "password"));
+                return "Profile updated";
+            }
+            case "GET /search":
+                return search(params);
+            case "GET /search/page": {
+                SearchPage page = pms.searchPage(params.getOrDefault("criteria", ""), true,
+                        params.containsKey("cursor") ? intParam(params, "cursor") : -1,
+                        pageParam(params, "limit", 100));
+                String items = describe(page.getItems());
+                if (!page.hasMore()) {
+                    return items;
+                }
+                return (items.isEmpty() ? "" : items + "\n") + "next: " + page.getNextCursor();
+            }
+            case "GET /search/top": {
+                SearchOrder order;
+                try {
+                    order = SearchOrder.valueOf(required(params, "order").toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new RequestException(400, "Unknown order: " + params.get("order"));
+                }
+                return describe(pms.searchTop(params.getOrDefault("criteria", ""), true, order,
+                        pageParam(params, "k", 10)));
+            }
+            case "GET /search/price":
+                return describe(pms.searchByPrice(
+                        params.containsKey("minPrice") ? intParam(params, "minPrice") : Integer.MIN_VALUE,
+                        params.containsKey("maxPrice") ? intParam(params, "maxPrice") : Integer.MAX_VALUE,
+                        params.get("type"), params.get("location"),
+                        Boolean.parseBoolean(params.getOrDefault("availableOnly", "false")),
+                        pageParam(params, "limit", 100)));
+            case "GET /search/nearby":
+                return describe(pms.searchNearby(doubleParam(params, "latitude"), doubleParam(params, "longitude"),
+                        doubleParam(params, "radiusKm"),
+                        params.containsKey("minPrice") ? intParam(params, "minPrice") : Integer.MIN_VALUE,
+                        params.containsKey("maxPrice") ? intParam(params, "maxPrice") : Integer.MAX_VALUE,
+                        params.get("type"), Boolean.parseBoolean(params.getOrDefault("availableOnly", "false")),
+                        pageParam(params, "limit", 100)));
+            case "GET /search/box":
+                return describe(pms.searchWithinBox(doubleParam(params, "minLatitude"), doubleParam(params, "minLongitude"),
+                        doubleParam(params, "maxLatitude"), doubleParam(params, "maxLongitude"),
+                        params.containsKey("minPrice") ? intParam(params, "minPrice") : Integer.MIN_VALUE,
+                        params.containsKey("maxPrice") ? intParam(params, "maxPrice") : Integer.MAX_VALUE,
+                        params.get("type"), Boolean.parseBoolean(params.getOrDefault("availableOnly", "false")),
+                        pageParam(params, "limit", 100)));
+            case "GET /facets":
+                return describe(pms.getFacets());
+            case "GET /property": {
+                Property property = pms.getProperty(intParam(params, "id"));
+                if (property == null) {
+                    throw new RequestException(404, "Property not found");
+                }
+                return describe(property) + ", Available: " + property.isAvailable();
+            }
+            case "POST /property": {
+                Seller seller = sessionUser(params, Seller.class);
+                Property property = params.containsKey("latitude") || params.containsKey("longitude")
+                        ? new Property(intParam(params, "propertyId"), required(params, "location"),
+                                intParam(params, "price"), required(params, "type"), doubleParam(params, "latitude"),
+                                doubleParam(params, "longitude"))
+                        : new Property(intParam(params, "propertyId"), required(params, "location"),
+                                intParam(params, "price"), required(params, "type"));
+                pms.addProperty(property, seller);
+                return "Property added: " + property.getPropertyId();
+            }
+            case "DELETE /property": {
+                Seller seller = sessionUser(params, Seller.class);
+                Property property = pms.getProperty(intParam(params, "id"));
+                if (property == null) {
+                    throw new RequestException(404, "Property not found");
+                }
+                if (!seller.ownsListing(property.getPropertyId())) {
+                    throw new RequestException(403, "Not your listing");
+                }
+                pms.removeProperty(property.getPropertyId(), seller);
+                return "Property removed: " + property.getPropertyId();
+            }
+            case "POST /wishlist": {
+                Buyer buyer = sessionUser(params, Buyer.class);
+                buyer.addToWishlist(intParam(params, "propertyId"));
+                return "Added to wishlist";
+            }
+            case "GET /wishlist":
+                return describe(pms.getAvailableWishlist(sessionUser(params, Buyer.class)));
+            case "GET /notifications":
+                return String.join("\n", sessionUser(params, Buyer.class).takeNotifications());
+            case "POST /booking": {
+                User user = sessionUser(params);
+                Booking booking = new Booking(pms.nextBookingId(), intParam(params, "propertyId"),
+                        LocalDate.now().toString(), required(params, "checkIn"), required(params, "checkOut"),
+                        user.getUserId());
+                if (!pms.processBooking(booking)) {
+                    throw new RequestException(409, "Booking failed for property: " + booking.getPropertyId());
+                }
+                return String.valueOf(booking.getBookingId());
+            }
+            case "DELETE /booking": {
+                User user = sessionUser(params);
+                Booking booking = pms.getBooking(intParam(params, "id"));
+                if (booking == null) {
+                    throw new RequestException(404, "Booking not found");
+                }
+                boolean listingOwner = user instanceof Seller && ((Seller) user).ownsListing(booking.getPropertyId());
+                if (booking.getUserId() != user.getUserId() && !listingOwner) {
+                    throw new RequestException(403, "Not your booking");
+                }
+                if (!pms.cancelBooking(booking)) {
+                    throw new RequestException(404, "Booking not found");
+                }
+                return "Booking cancelled: " + booking.getBookingId();
+            }
+            default:
+                throw new RequestException(404, "Unknown operation: " + method + " " + path);
+        }
+    }
+
+    private String register(Map<String, String> params) throws IOException {
+        String type = required(params, "type");
+        String username = required(params, "username");
+        String email = required(params, "email");
+        String password = required(params, "password");
+        User user;
+        if (type.equals("seller")) {
+            user = new Seller(pms.nextUserId(), username, email, password, params.getOrDefault("contactInfo", ""),
+                    intParam(params, "rating"));
+        } else if (type.equals("buyer")) {
+            user = new Buyer(pms.nextUserId(), username, email, password, intParam(params, "budgetRange"),
+                    params.getOrDefault("locationWanted", ""));
+        } else {
+            throw new RequestException(400, "Invalid user type: " + type);
+        }
+        try {
+            pms.registerUser(user);
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(409, e.getMessage());
+        }
+        return String.valueOf(user.getUserId());
+    }
+
+    private String search(Map<String, String> params) {
+        String criteria = params.getOrDefault("criteria", "");
+        int offset = params.containsKey("offset") ? intParam(params, "offset") : 0;
+        if (offset < 0) {
+            throw new RequestException(400, "offset must not be negative");
+        }
+        int limit = pageParam(params, "limit", 100);
+        User user = pms.getSessionUser(params.get("token"));
+        List<Property> properties;
+        if (user instanceof Seller) {
+            properties = ((Seller) user).searchProperty(criteria, offset, limit);
+        } else if (user instanceof Buyer) {
+            properties = ((Buyer) user).searchProperty(pms, criteria, offset, limit);
+        } else {
+            List<Property> page = new ArrayList<>();
+            int[] skipped = new int[1];
+            if (limit > 0) {
+                pms.forEachMatch(criteria, true, property -> {
+                    if (skipped[0] < offset) {
+                        skipped[0]++;
+                    } else {
+                        page.add(property);
+                    }
+                    return page.size() < limit;
+                });
+            }
+            properties = page;
+        }
+        return describe(properties);
+    }
+
+    private static String describe(List<Property> properties) {
+        StringBuilder sb = new StringBuilder();
+        for (Property property : properties) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(describe(property));
+        }
+        return sb.toString();
+    }
+
+    private static String describe(CatalogFacets.Summary summary) {
+        StringBuilder sb = new StringBuilder();
+        CatalogFacets.Facet total = summary.getTotal();
+        sb.append(describe("Listings", total));
+        if (total.getCount() > 0) {
+            sb.append(", Price range: ").append(summary.getMinPrice()).append('-').append(summary.getMaxPrice());
+        }
+        if (total.getAvailable() > 0) {
+            sb.append(", Available price range: ").append(summary.getMinAvailablePrice()).append('-')
+                    .append(summary.getMaxAvailablePrice());
+        }
+        for (CatalogFacets.Facet type : summary.getTypes()) {
+            sb.append('\n').append(describe("Type " + type.getName(), type));
+        }
+        for (CatalogFacets.Facet location : summary.getLocations()) {
+            sb.append('\n').append(describe("Location " + location.getName(), location));
+        }
+        int[] bounds = summary.getBucketBounds();
+        long[] buckets = summary.getBuckets();
+        long[] available = summary.getAvailableBuckets();
+        for (int i = 0; i < buckets.length; i++) {
+            String range = i == 0 ? "< " + bounds[0] : i == bounds.length ? ">= " + bounds[i - 1]
+                    : bounds[i - 1] + "-" + (bounds[i] - 1);
+            sb.append("\nPrice ").append(range).append(": ").append(buckets[i]).append(" (available ")
+                    .append(available[i]).append(')');
+        }
+        return sb.toString();
+    }
+
+    private static String describe(String label, CatalogFacets.Facet facet) {
+        return String.format("%s: %d (available %d), Average price: %.0f", label, facet.getCount(), facet.getAvailable(),
+                facet.getAveragePrice());
+    }
+
+    private static String describe(Property property) {
+        String line = "ID: " + property.getPropertyId() + ", Location: " + property.getLocation() + ", Price: " + property.getPrice()
+                + ", Type: " + property.getType();
+        return property.hasCoordinates() ? line + ", Coordinates: " + property.getLatitude() + ", " + property.getLongitude()
+                : line;
+    }
+
+    private User sessionUser(Map<String, String> params) {
+        User user = pms.getSessionUser(params.get("token"));
+        if (user == null) {
+            throw new RequestException(401, "Login required");
+        }
+        return user;
+    }
+
+    private <T extends User> T sessionUser(Map<String, String> params, Class<T> role) {
+        User user = sessionUser(params);
+        if (!role.isInstance(user)) {
+            throw new RequestException(403, "Only a " + role.getSimpleName().toLowerCase() + " can do that");
+        }
+        return role.cast(user);
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new RequestException(400, "Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name) {
+        try {
+            return Integer.parseInt(required(params, name));
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Not a number: " + name);
+        }
+    }
+
+    // A page size or k, from 1 to PropertySearchIndex.MAX_PAGE
+    private static int pageParam(Map<String, String> params, String name, int defaultValue) {
+        int value = params.containsKey(name) ? intParam(params, name) : defaultValue;
+        if (value < 1 || value > PropertySearchIndex.MAX_PAGE) {
+            throw new RequestException(400, name + " must be between 1 and " + PropertySearchIndex.MAX_PAGE);
+        }
+        return value;
+    }
+
+    private static double doubleParam(Map<String, String> params, String name) {
+        try {
+            return Double.parseDouble(required(params, name));
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Not a number: " + name);
+        }
+    }
+
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseInto(params, exchange.getRequestURI().getRawQuery());
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            if (body.length > 0) {
+                parseInto(params, new String(body, StandardCharsets.UTF_8));
+            }
+        }
+        String auth = exchange.getRequestHeaders().getFirst("Authorization");
+        if (auth != null && auth.startsWith("Bearer ")) {
+            params.putIfAbsent("token", auth.substring(7));
+        }
+        return params;
+    }
+
+    private static void parseInto(Map<String, String> params, String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+}
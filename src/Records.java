@@ -0,0 +1,127 @@
+// Structured journal records: a type token followed by tab-separated, escaped fields. A null field is
+// written as the marker \N, which escaping keeps distinct from any string value.
+class Records {
+    // users.txt
+    static final String SELLER_REGISTERED = "SELLER_REGISTERED";
+    static final String BUYER_REGISTERED = "BUYER_REGISTERED";
+    static final String PROFILE_UPDATED = "PROFILE_UPDATED";
+    static final String BUDGET_SET = "BUDGET_SET";
+    static final String WISHLIST_ADDED = "WISHLIST_ADDED";
+
+    // properties.txt
+    static final String PROPERTY_ADDED = "PROPERTY_ADDED";
+    static final String PROPERTY_UPDATED = "PROPERTY_UPDATED";
+    static final String PROPERTY_AVAILABILITY = "PROPERTY_AVAILABILITY";
+    static final String PROPERTY_LOCATED = "PROPERTY_LOCATED";
+    static final String PROPERTY_REMOVED = "PROPERTY_REMOVED";
+    static final String LISTING_ADDED = "LISTING_ADDED";
+    static final String LISTING_REMOVED = "LISTING_REMOVED";
+
+    // bookings.txt
+    static final String BOOKING_CONFIRMED = "BOOKING_CONFIRMED";
+    static final String BOOKING_CANCELLED = "BOOKING_CANCELLED";
+
+    private static final String NULL_FIELD = "\\N";
+
+    private Records() {
+    }
+
+    public static String encode(String type, Object... fields) {
+        StringBuilder sb = new StringBuilder(type);
+        for (Object field : fields) {
+            sb.append('\t');
+            if (field == null) {
+                sb.append(NULL_FIELD);
+            } else {
+                escape(sb, field.toString());
+            }
+        }
+        return sb.toString();
+    }
+
+    // PROPERTY_ADDED, with latitude and longitude as two more fields when the property has them
+    public static String propertyAdded(Property property) {
+        if (property.hasCoordinates()) {
+            return encode(PROPERTY_ADDED, property.getPropertyId(), property.getLocation(), property.getPrice(),
+                    property.getType(), property.isAvailable(), property.getLatitude(), property.getLongitude());
+        }
+        return encode(PROPERTY_ADDED, property.getPropertyId(), property.getLocation(), property.getPrice(),
+                property.getType(), property.isAvailable());
+    }
+
+    // BOOKING_CONFIRMED: bookingId, propertyId, bookingDate, checkIn, checkOut, userId
+    public static String bookingConfirmed(Booking booking) {
+        return encode(BOOKING_CONFIRMED, booking.getBookingId(), booking.getPropertyId(), booking.getBookingDate(),
+                booking.getCheckInDate(), booking.getCheckOutDate(), booking.getUserId());
+    }
+
+    // Returns the type followed by the fields, null ones included, or null for free-text lines written
+    // before records existed
+    public static String[] decode(String line) {
+        int tab = line.indexOf('\t');
+        if (tab <= 0 || !isTypeToken(line, tab)) {
+            return null;
+        }
+        int count = 1;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '\t') {
+                count++;
+            }
+        }
+        String[] parts = new String[count];
+        parts[0] = line.substring(0, tab);
+        int index = 1;
+        StringBuilder field = new StringBuilder();
+        boolean nullField = false;
+        for (int i = tab + 1; i <= line.length(); i++) {
+            char c = i < line.length() ? line.charAt(i) : '\t';
+            if (c == '\t') {
+                parts[index++] = nullField ? null : field.toString();
+                field.setLength(0);
+                nullField = false;
+            } else if (line.startsWith(NULL_FIELD, i) && field.length() == 0
+                    && (i + 2 == line.length() || line.charAt(i + 2) == '\t')) {
+                nullField = true;
+                i++;
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                field.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                field.append(c);
+            }
+        }
+        return parts;
+    }
+
+    private static boolean isTypeToken(String line, int end) {
+        for (int i = 0; i < end; i++) {
+            char c = line.charAt(i);
+            if (!(c >= 'A' && c <= 'Z') && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void escape(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+}
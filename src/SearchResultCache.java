@@ -0,0 +1,299 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded cache of search results with approximate LRU eviction, keyed by lower-cased criteria and
+// holding sorted doc ids. The owning index reports every document change and each cached result the
+// change could affect is patched in place, so entries never go stale; they only leave by eviction.
+// Entries are also filed under the first NgramIndex.N characters of their query (the whole query if
+// shorter); a matching field must contain that gram, so a change only tests the entries filed under
+// grams of the changed fields instead of every cached entry.
+//
+// Lookups take no lock: entries sit in a concurrent map and a hit only refreshes the entry's use time.
+// Puts, patches and eviction synchronize on the cache. The index calls lookups and puts under the
+// catalog read lock and patches under the write lock, so a lookup never sees an entry mid-patch.
+class SearchResultCache {
+    // A hit refreshes its entry's use time at most this often, so hot entries are not written on every read
+    private static final long TOUCH_NANOS = 1_000_000;
+
+    private static class Entry {
+        final String query;
+        final boolean includeType;
+        int[] docs;
+        int size;
+        volatile long lastUsed = System.nanoTime();
+
+        Entry(String query, boolean includeType, int[] docs) {
+            this.query = query;
+            this.includeType = includeType;
+            this.docs = docs;
+            this.size = docs.length;
+        }
+
+        // Same rule as PropertySearchIndex over lower-cased fields
+        boolean matches(String location, String type) {
+            return location.contains(query) || (includeType && type.contains(query));
+        }
+
+        long bytes() {
+            return 64 + 2L * query.length() + 4L * docs.length;
+        }
+
+        void insert(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, Math.max(4, size * 2));
+            }
+            System.arraycopy(docs, pos, docs, pos + 1, size - pos);
+            docs[pos] = doc;
+            size++;
+        }
+
+        void remove(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos >= 0) {
+                System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+                size--;
+            }
+        }
+
+        void touch() {
+            long now = System.nanoTime();
+            if (now - lastUsed > TOUCH_NANOS) {
+                lastUsed = now;
+            }
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, List<Entry>> byGram = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long bytes;
+    private long evictions;
+    private long patches;
+
+    // maxEntries of 0 disables caching
+    public SearchResultCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    private static String key(String query, boolean includeType) {
+        return (includeType ? '+' : '-') + query;
+    }
+
+    private static String gram(String query) {
+        return query.substring(0, Math.min(NgramIndex.N, query.length()));
+    }
+
+    // Every gram a query matching one of the fields could be filed under
+    private static void addGrams(Set<String> grams, String field) {
+        for (int i = 0; i < field.length(); i++) {
+            for (int n = 1; n <= NgramIndex.N && i + n <= field.length(); n++) {
+                grams.add(field.substring(i, i + n));
+            }
+        }
+    }
+
+    private List<Entry> candidates(String... fields) {
+        if (entries.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<String> grams = new HashSet<>();
+        grams.add("");
+        for (String field : fields) {
+            addGrams(grams, field);
+        }
+        List<Entry> candidates = new ArrayList<>();
+        for (String gram : grams) {
+            List<Entry> filed = byGram.get(gram);
+            if (filed != null) {
+                candidates.addAll(filed);
+            }
+        }
+        return candidates;
+    }
+
+    // Copy of the sorted doc ids cached for the query, or null on a miss
+    public int[] get(String query, boolean includeType) {
+        Entry entry = entries.get(key(query, includeType));
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.touch();
+        return Arrays.copyOf(entry.docs, entry.size);
+    }
+
+    // Up to limit cached doc ids greater than afterDoc, or null on a miss; cost is independent of result size.
+    // Only lookups with counted set go into the hit and miss counts, so a caller reading one query a page
+    // at a time counts it once.
+    public int[] slice(String query, boolean includeType, int afterDoc, int limit, boolean counted) {
+        Entry entry = entries.get(key(query, includeType));
+        if (entry == null) {
+            if (counted) {
+                misses.increment();
+            }
+            return null;
+        }
+        if (counted) {
+            hits.increment();
+        }
+        entry.touch();
+        int pos = Arrays.binarySearch(entry.docs, 0, entry.size, afterDoc);
+        int from = pos >= 0 ? pos + 1 : -pos - 1;
+        return Arrays.copyOfRange(entry.docs, from, from + Math.max(0, Math.min(limit, entry.size - from)));
+    }
+
+    // Caches sorted doc ids for the query; the array is kept, so the caller must not modify it
+    public synchronized void put(String query, boolean includeType, int[] docs) {
+        if (maxEntries == 0) {
+            return;
+        }
+        Entry entry = new Entry(query, includeType, docs);
+        if (entry.bytes() > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key(query, includeType), entry);
+        if (previous != null) {
+            bytes -= previous.bytes();
+            unfile(previous);
+        }
+        byGram.computeIfAbsent(gram(query), k -> new ArrayList<>(2)).add(entry);
+        bytes += entry.bytes();
+        evict();
+    }
+
+    // A document was added, possibly under the id of a removed one; it is inserted in sorted position into
+    // every result it matches
+    public synchronized void added(int doc, String location, String type) {
+        for (Entry entry : candidates(location, type)) {
+            if (entry.matches(location, type)) {
+                patch(entry, doc, true);
+            }
+        }
+        evict();
+    }
+
+    public synchronized void removed(int doc, String location, String type) {
+        for (Entry entry : candidates(location, type)) {
+            if (entry.matches(location, type)) {
+                patch(entry, doc, false);
+            }
+        }
+    }
+
+    // Only results whose match changed are touched; fields are lower-cased as in the index
+    public synchronized void updated(int doc, String oldLocation, String oldType, String location, String type) {
+        for (Entry entry : candidates(oldLocation, oldType, location, type)) {
+            boolean matched = entry.matches(oldLocation, oldType);
+            boolean matches = entry.matches(location, type);
+            if (matched != matches) {
+                patch(entry, doc, matches);
+            }
+        }
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        byGram.clear();
+        bytes = 0;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    // Cached results updated in place by catalog changes
+    public synchronized long getPatchCount() {
+        return patches;
+    }
+
+    private void patch(Entry entry, int doc, boolean insert) {
+        bytes -= entry.bytes();
+        if (insert) {
+            entry.insert(doc);
+        } else {
+            entry.remove(doc);
+        }
+        bytes += entry.bytes();
+        patches++;
+    }
+
+    // Once either bound is exceeded, drops the least recently used entries until both are back under
+    // seven eighths of their bound, so the sort is paid once per many puts rather than on each one
+    private void evict() {
+        if (entries.size() <= maxEntries && bytes <= maxBytes) {
+            return;
+        }
+        Entry[] candidates = entries.values().toArray(new Entry[0]);
+        // Hits keep refreshing lastUsed during the sort, so it sorts a snapshot of the times
+        long[] lastUsed = new long[candidates.length];
+        Integer[] order = new Integer[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            lastUsed[i] = candidates[i].lastUsed;
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastUsed[i]));
+        int entryTarget = maxEntries - maxEntries / 8;
+        long byteTarget = maxBytes - maxBytes / 8;
+        for (int i : order) {
+            if (entries.size() <= entryTarget && bytes <= byteTarget) {
+                break;
+            }
+            Entry entry = candidates[i];
+            if (entries.remove(key(entry.query, entry.includeType), entry)) {
+                bytes -= entry.bytes();
+                unfile(entry);
+                evictions++;
+            }
+        }
+    }
+
+    private void unfile(Entry entry) {
+        String gram = gram(entry.query);
+        List<Entry> filed = byGram.get(gram);
+        for (int i = 0; i < filed.size(); i++) {
+            if (filed.get(i) == entry) {
+                filed.set(i, filed.get(filed.size() - 1));
+                filed.remove(filed.size() - 1);
+                break;
+            }
+        }
+        if (filed.isEmpty()) {
+            byGram.remove(gram);
+        }
+    }
+}
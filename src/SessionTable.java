@@ -0,0 +1,83 @@
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Concurrent table of login sessions; a valid token stands in for username/password checks.
+// Abandoned sessions are swept out by open(), at most once per quarter of the idle timeout, so the
+// table stays bounded by the logins of one timeout period without a background thread.
+class SessionTable {
+    private static class Session {
+        final User user;
+        volatile long lastAccess;
+
+        Session(User user, long now) {
+            this.user = user;
+            this.lastAccess = now;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long idleTimeoutMillis;
+    private final long sweepIntervalMillis;
+    private final AtomicLong nextSweep;
+
+    public SessionTable(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.sweepIntervalMillis = Math.max(1, idleTimeoutMillis / 4);
+        this.nextSweep = new AtomicLong(System.currentTimeMillis() + sweepIntervalMillis);
+    }
+
+    public String open(User user) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        long now = System.currentTimeMillis();
+        sessions.put(token, new Session(user, now));
+        long due = nextSweep.get();
+        if (now >= due && nextSweep.compareAndSet(due, now + sweepIntervalMillis)) {
+            expireIdle(now);
+        }
+        return token;
+    }
+
+    // Returns the session's user and refreshes its idle timer, or null if unknown or expired
+    public User resolve(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - session.lastAccess > idleTimeoutMillis) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.lastAccess = now;
+        return session.user;
+    }
+
+    public boolean close(String token) {
+        return token != null && sessions.remove(token) != null;
+    }
+
+    // Drops every session of a user, e.g. after a password change
+    public void closeAll(User user) {
+        sessions.values().removeIf(session -> session.user == user);
+    }
+
+    public void expireIdle() {
+        expireIdle(System.currentTimeMillis());
+    }
+
+    private void expireIdle(long now) {
+        sessions.values().removeIf(session -> now - session.lastAccess > idleTimeoutMillis);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
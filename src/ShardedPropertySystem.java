@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+// A catalog partitioned by location across N PropertyManagementSystems, each with its own lock,
+// indexes, calendar and journals in <dataDir>/shard-<i>. Users, sessions, seller listings and wishlists
+// live in one more system, <dataDir>/users, which the shards share a listing matcher with and which
+// resolves seller listings through the shards.
+// Point operations on a property go to the one shard that holds it, so writes in different regions
+// never contend; searches fan out to every shard on a fork/join pool and the results are merged.
+// A property stays in the shard chosen when it was listed, even if its location changes later.
+// Recovery routes by where properties are found, so the shard count can grow between runs but not shrink.
+class ShardedPropertySystem {
+    private static final Comparator<Property> BY_ID = Comparator.comparingInt(Property::getPropertyId);
+    private static final Comparator<Property> BY_PRICE = Comparator.comparingInt(Property::getPrice).thenComparing(BY_ID);
+
+    private final PropertyManagementSystem directory;
+    private final PropertyManagementSystem[] shards;
+    private final ToIntFunction<String> partitioner;
+    private final Map<Integer, PropertyManagementSystem> shardByProperty = new ConcurrentHashMap<>();
+    private final AtomicInteger lastBookingId = new AtomicInteger();
+    private final ForkJoinPool pool;
+
+    private ShardedPropertySystem(PropertyManagementSystem directory, PropertyManagementSystem[] shards,
+            ToIntFunction<String> partitioner) {
+        this.directory = directory;
+        this.shards = shards;
+        this.partitioner = partitioner;
+        this.pool = new ForkJoinPool(Math.min(shards.length, Runtime.getRuntime().availableProcessors()));
+        directory.resolveListingsWith(this::getProperty);
+    }
+
+    // Partitions by a hash of the lower-cased location
+    public static ShardedPropertySystem recover(Path dataDir, int shardCount) throws IOException {
+        return recover(dataDir, shardCount, location -> location.trim().toLowerCase().hashCode());
+    }
+
+    // partitioner maps a location to a region key, reduced modulo the shard count
+    public static ShardedPropertySystem recover(Path dataDir, int shardCount, ToIntFunction<String> partitioner)
+            throws IOException {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        if (Files.exists(dataDir.resolve("shard-" + shardCount))) {
+            throw new IOException("Data directory " + dataDir + " has more than " + shardCount + " shards");
+        }
+        ListingMatcher matcher = new ListingMatcher();
+        PropertyManagementSystem[] shards = new PropertyManagementSystem[shardCount];
+        List<ForkJoinTask<PropertyManagementSystem>> recovering = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            Path shardDir = dataDir.resolve("shard-" + i);
+            recovering.add(ForkJoinPool.commonPool().submit(() -> {
+                try {
+                    return PropertyManagementSystem.recover(shardDir, matcher, null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = recovering.get(i).join();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Map<Integer, PropertyManagementSystem> owners = new ConcurrentHashMap<>();
+        int lastBooking = 0;
+        for (PropertyManagementSystem shard : shards) {
+            for (Property property : shard.getPropertyList()) {
+                if (owners.putIfAbsent(property.getPropertyId(), shard) != null) {
+                    System.err.println("Property held by more than one shard: " + property.getPropertyId());
+                }
+            }
+            for (Booking booking : shard.getBookingList()) {
+                lastBooking = Math.max(lastBooking, booking.getBookingId());
+            }
+        }
+        PropertyManagementSystem directory = PropertyManagementSystem.recover(dataDir.resolve("users"), matcher,
+                owners::containsKey);
+        ShardedPropertySystem system = new ShardedPropertySystem(directory, shards, partitioner);
+        system.shardByProperty.putAll(owners);
+        system.lastBookingId.set(lastBooking);
+        return system;
+    }
+
+    // Checkpoints every shard and the user directory in parallel
+    public void checkpoint() throws IOException {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (PropertyManagementSystem shard : shards) {
+            tasks.add(pool.submit(() -> checkpoint(shard)));
+        }
+        checkpoint(directory);
+        try {
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void checkpoint(PropertyManagementSystem system) {
+        try {
+            system.checkpoint();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public PropertyManagementSystem getShard(int index) {
+        return shards[index];
+    }
+
+    // The system holding users and sessions
+    public PropertyManagementSystem getDirectory() {
+        return directory;
+    }
+
+    public PropertyManagementSystem shardFor(String location) {
+        return shards[Math.floorMod(partitioner.applyAsInt(location), shards.length)];
+    }
+
+    // Users
+
+    public void registerUser(User user) throws IOException {
+        directory.registerUser(user);
+    }
+
+    public int nextUserId() {
+        return directory.nextUserId();
+    }
+
+    public User findUser(String username) {
+        return directory.findUser(username);
+    }
+
+    public User authenticateUser(String username, String password) {
+        return directory.authenticateUser(username, password);
+    }
+
+    public String login(String username, String password) {
+        return directory.login(username, password);
+    }
+
+    public User getSessionUser(String token) {
+        return directory.getSessionUser(token);
+    }
+
+    public boolean logout(String token) {
+        return directory.logout(token);
+    }
+
+    // Point operations, routed to a single shard
+
+    // Lists the property in the shard for its location; ids are unique across shards
+    public void addProperty(Property property) throws IOException {
+        addProperty(property, null);
+    }
+
+    // As above, then links the listing to seller in the directory, unless seller is null. The shard and the
+    // directory journal separately, so if the link fails the property is removed again.
+    public void addProperty(Property property, Seller seller) throws IOException {
+        PropertyManagementSystem shard = shardFor(property.getLocation());
+        if (shardByProperty.putIfAbsent(property.getPropertyId(), shard) != null) {
+            throw new IllegalArgumentException("Property ID already exists: " + property.getPropertyId());
+        }
+        try {
+            shard.addProperty(property);
+        } catch (IOException | RuntimeException e) {
+            shardByProperty.remove(property.getPropertyId(), shard);
+            throw e;
+        }
+        if (seller != null) {
+            try {
+                seller.addProperty(property);
+            } catch (IOException | RuntimeException e) {
+                removeProperty(property.getPropertyId());
+                throw e;
+            }
+        }
+    }
+
+    public boolean removeProperty(int propertyId) throws IOException {
+        PropertyManagementSystem shard = shardByProperty.get(propertyId);
+        if (shard == null || !shard.removeProperty(propertyId)) {
+            return false;
+        }
+        shardByProperty.remove(propertyId, shard);
+        return true;
+    }
+
+    // Updates in place; the property keeps its shard
+    public boolean updateProperty(int propertyId, String location, int price, String type) throws IOException {
+        PropertyManagementSystem shard = shardByProperty.get(propertyId);
+        return shard != null && shard.updateProperty(propertyId, location, price, type);
+    }
+
+    public Property getProperty(int propertyId) {
+        PropertyManagementSystem shard = shardByProperty.get(propertyId);
+        return shard == null ? null : shard.getProperty(propertyId);
+    }
+
+    public boolean containsProperty(int propertyId) {
+        return getProperty(propertyId) != null;
+    }
+
+    public int getPropertyCount() {
+        return shardByProperty.size();
+    }
+
+    public int nextBookingId() {
+        return lastBookingId.incrementAndGet();
+    }
+
+    public boolean processBooking(Booking booking) throws IOException {
+        PropertyManagementSystem shard = shardByProperty.get(booking.getPropertyId());
+        if (shard == null) {
+            AuditLog.publish(AuditEvent.Type.BOOKING_REJECTED, null, booking.getPropertyId());
+            return false;
+        }
+        lastBookingId.accumulateAndGet(booking.getBookingId(), Math::max);
+        return shard.processBooking(booking);
+    }
+
+    public boolean cancelBooking(Booking booking) throws IOException {
+        PropertyManagementSystem shard = shardByProperty.get(booking.getPropertyId());
+        return shard != null && shard.cancelBooking(booking);
+    }
+
+    public Booking getBooking(int bookingId) {
+        for (PropertyManagementSystem shard : shards) {
+            Booking booking = shard.getBooking(bookingId);
+            if (booking != null) {
+                return booking;
+            }
+        }
+        return null;
+    }
+
+    // Searches, fanned out to every shard and merged
+
+    // searchProperty over every shard, in property id order
+    public List<Property> searchProperty(String criteria, boolean includeType) {
+        List<Property> result = concat(fanOut(shard -> shard.searchProperty(criteria, includeType)));
+        result.sort(BY_ID);
+        return result;
+    }
+
+    // The cheapest matches across shards, up to limit; each shard contributes at most limit
+    public List<Property> searchByPrice(int minPrice, int maxPrice, String type, String location, boolean availableOnly,
+            int limit) {
+        return merge(fanOut(shard -> shard.searchByPrice(minPrice, maxPrice, type, location, availableOnly,
+                limit)), BY_PRICE, limit);
+    }
+
+    // The k cheapest of searchProperty's matches across shards
+    public List<Property> searchCheapest(String criteria, boolean includeType, int k) {
+        return merge(fanOut(shard -> shard.searchTop(criteria, includeType, SearchOrder.CHEAPEST, k)), BY_PRICE, k);
+    }
+
+    // The nearest matches within radiusKm across shards, up to limit
+    public List<Property> searchNearby(double latitude, double longitude, double radiusKm, int minPrice, int maxPrice,
+            String type, boolean availableOnly, int limit) {
+        GeoIndex.checkCoordinates(latitude, longitude);
+        GeoIndex.checkRadius(radiusKm);
+        return merge(fanOut(shard -> shard.searchNearby(latitude, longitude, radiusKm, minPrice, maxPrice, type,
+                availableOnly, limit)), nearest(latitude, longitude), limit);
+    }
+
+    // The matches inside the box nearest its centre across shards, up to limit
+    public List<Property> searchWithinBox(double minLatitude, double minLongitude, double maxLatitude,
+            double maxLongitude, int minPrice, int maxPrice, String type, boolean availableOnly, int limit) {
+        return merge(fanOut(shard -> shard.searchWithinBox(minLatitude, minLongitude, maxLatitude, maxLongitude,
+                minPrice, maxPrice, type, availableOnly, limit)),
+                nearest((minLatitude + maxLatitude) / 2, GeoIndex.boxCenterLongitude(minLongitude, maxLongitude)), limit);
+    }
+
+    private static Comparator<Property> nearest(double latitude, double longitude) {
+        return Comparator.<Property>comparingDouble(property -> GeoIndex.distanceKm(latitude, longitude,
+                property.getLatitude(), property.getLongitude())).thenComparing(BY_ID);
+    }
+
+    // filterProperties over every shard, in property id order
+    public List<Property> filterProperties(IntBitmap ids, String location, String type, boolean availableOnly) {
+        List<Property> result = concat(fanOut(shard -> shard.filterProperties(ids, location, type, availableOnly)));
+        result.sort(BY_ID);
+        return result;
+    }
+
+    // Every shard's facets, merged
+    public CatalogFacets.Summary getFacets() {
+        return CatalogFacets.Summary.merge(fanOut(PropertyManagementSystem::getFacets));
+    }
+
+    public List<Property> getAvailableWishlist(Buyer buyer) {
+        return filterProperties(buyer.getWishlist(), null, null, true);
+    }
+
+    // Runs the query on every shard in parallel; results are in shard order
+    private <T> List<T> fanOut(Function<PropertyManagementSystem, T> query) {
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(shards.length);
+        for (int i = 1; i < shards.length; i++) {
+            PropertyManagementSystem shard = shards[i];
+            tasks.add(pool.submit(() -> query.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        results.add(query.apply(shards[0]));
+        for (ForkJoinTask<T> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    private static List<Property> concat(List<List<Property>> lists) {
+        int size = 0;
+        for (List<Property> list : lists) {
+            size += list.size();
+        }
+        List<Property> result = new ArrayList<>(size);
+        for (List<Property> list : lists) {
+            result.addAll(list);
+        }
+        return result;
+    }
+
+    // Merges per-shard lists that are each sorted by order, keeping the first limit
+    private static List<Property> merge(List<List<Property>> lists, Comparator<Property> order, int limit) {
+        int[] next = new int[lists.size()];
+        List<Property> result = new ArrayList<>();
+        while (result.size() < limit) {
+            int best = -1;
+            for (int i = 0; i < lists.size(); i++) {
+                if (next[i] < lists.get(i).size() && (best < 0
+                        || order.compare(lists.get(i).get(next[i]), lists.get(best).get(next[best])) < 0)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            result.add(lists.get(best).get(next[best]++));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,429 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+// Compact binary snapshot of users, properties and bookings plus the journal positions it covers
+class Snapshot {
+    private static final int MAGIC = 0x504D5331;
+    // Version 1 stored wishlist entries as text; they are converted to property ids on load.
+    // Version 3 added property coordinates and version 4 the user who made each booking.
+    private static final int VERSION = 4;
+    private static final byte SELLER = 1;
+    private static final byte BUYER = 2;
+
+    static final String[] LOGS = {FileUtils.USERS_FILE, FileUtils.PROPERTIES_FILE, FileUtils.BOOKINGS_FILE};
+
+    private final IntObjectMap<User> users = new IntObjectMap<>();
+    private final IntObjectMap<Property> properties = new IntObjectMap<>();
+    private final IntObjectMap<Booking> bookings = new IntObjectMap<>();
+    private final Map<Seller, LinkedHashSet<Integer>> listings = new LinkedHashMap<>();
+    private final long[] positions = new long[LOGS.length];
+
+    private Snapshot() {
+    }
+
+    // Journal positions covering every record written so far
+    static long[] positions(PropertyManagementSystem pms) throws IOException {
+        long[] positions = new long[LOGS.length];
+        for (int i = 0; i < LOGS.length; i++) {
+            positions[i] = Journal.forFile(pms.logFile(LOGS[i])).getWrittenSequence();
+        }
+        return positions;
+    }
+
+    // Serializes the current state, tagged with the positions it covers, into memory. The caller keeps
+    // the state still while this runs; the bytes can then be stored without holding anything.
+    static byte[] encode(PropertyManagementSystem pms, long[] positions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (long position : positions) {
+            out.writeLong(position);
+        }
+
+        List<User> userList = pms.getUserList();
+        out.writeInt(userList.size());
+        for (User user : userList) {
+            out.writeByte(user instanceof Seller ? SELLER : BUYER);
+            out.writeInt(user.getUserId());
+            writeString(out, user.getUsername());
+            writeString(out, user.getEmail());
+            writeString(out, user.getPassword());
+            if (user instanceof Seller) {
+                Seller seller = (Seller) user;
+                writeString(out, seller.getContactInfo());
+                out.writeInt(seller.getRating());
+                out.writeInt(seller.getActiveListingsCount());
+                int[] listingIds = seller.getListingIds();
+                out.writeInt(listingIds.length);
+                for (int propertyId : listingIds) {
+                    out.writeInt(propertyId);
+                }
+            } else {
+                Buyer buyer = (Buyer) user;
+                out.writeInt(buyer.getBudgetRange());
+                writeString(out, buyer.getLocationWanted());
+                int[] wishlist = buyer.getWishlist().toArray();
+                out.writeInt(wishlist.length);
+                for (int propertyId : wishlist) {
+                    out.writeInt(propertyId);
+                }
+            }
+        }
+
+        List<Property> propertyList = pms.getPropertyList();
+        out.writeInt(propertyList.size());
+        for (Property property : propertyList) {
+            out.writeInt(property.getPropertyId());
+            writeString(out, property.getLocation());
+            out.writeInt(property.getPrice());
+            writeString(out, property.getType());
+            out.writeBoolean(property.isAvailable());
+            out.writeDouble(property.getLatitude());
+            out.writeDouble(property.getLongitude());
+        }
+
+        List<Booking> bookingList = pms.getBookingList();
+        out.writeInt(bookingList.size());
+        for (Booking booking : bookingList) {
+            out.writeInt(booking.getBookingId());
+            out.writeInt(booking.getPropertyId());
+            writeString(out, booking.getBookingDate());
+            writeString(out, booking.getCheckInDate());
+            writeString(out, booking.getCheckOutDate());
+            out.writeInt(booking.getUserId());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // Durably replaces the snapshot at path
+    static void store(byte[] image, Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(image);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Rebuilds pms from the snapshot at path (if any) followed by the journal records written after it,
+    // and returns the snapshot's journal positions.
+    // listedElsewhere, if not null, accepts seller listings of properties held by other systems
+    public static long[] recover(PropertyManagementSystem pms, Path path, IntPredicate listedElsewhere) throws IOException {
+        Snapshot state = new Snapshot();
+        if (Files.exists(path)) {
+            state.load(path);
+        }
+        for (int i = 0; i < LOGS.length; i++) {
+            state.replay(Paths.get(pms.logFile(LOGS[i])), state.positions[i]);
+        }
+        state.install(pms, listedElsewhere);
+        return state.positions.clone();
+    }
+
+    private void load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + path);
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int version = in.getInt() == MAGIC ? in.getInt() : -1;
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = in.getLong();
+            }
+
+            int userCount = in.getInt();
+            for (int i = 0; i < userCount; i++) {
+                byte kind = in.get();
+                int userId = in.getInt();
+                String username = readString(in);
+                String email = readString(in);
+                String password = readString(in);
+                if (kind == SELLER) {
+                    String contactInfo = readString(in);
+                    int rating = in.getInt();
+                    Seller seller = new Seller(userId, username, email, password, contactInfo, rating);
+                    int activeListings = in.getInt();
+                    seller.restoreListings(new int[0], activeListings);
+                    int listingCount = in.getInt();
+                    LinkedHashSet<Integer> ids = new LinkedHashSet<>();
+                    for (int j = 0; j < listingCount; j++) {
+                        ids.add(in.getInt());
+                    }
+                    listings.put(seller, ids);
+                    users.put(userId, seller);
+                } else {
+                    int budgetRange = in.getInt();
+                    String locationWanted = readString(in);
+                    Buyer buyer = new Buyer(userId, username, email, password, budgetRange, locationWanted);
+                    int wishlistSize = in.getInt();
+                    for (int j = 0; j < wishlistSize; j++) {
+                        if (version == 1) {
+                            addWishlistItem(buyer, readString(in));
+                        } else {
+                            buyer.applyWishlistAdd(in.getInt());
+                        }
+                    }
+                    users.put(userId, buyer);
+                }
+            }
+
+            int propertyCount = in.getInt();
+            for (int i = 0; i < propertyCount; i++) {
+                int propertyId = in.getInt();
+                String location = readString(in);
+                int price = in.getInt();
+                String type = readString(in);
+                Property property = new Property(propertyId, location, price, type);
+                property.applyAvailable(in.get() != 0);
+                if (version >= 3) {
+                    property.applyCoordinates(in.getDouble(), in.getDouble());
+                }
+                properties.put(propertyId, property);
+            }
+
+            int bookingCount = in.getInt();
+            for (int i = 0; i < bookingCount; i++) {
+                int bookingId = in.getInt();
+                int propertyId = in.getInt();
+                String bookingDate = readString(in);
+                String checkIn = readString(in);
+                String checkOut = readString(in);
+                Booking booking = new Booking(bookingId, propertyId, bookingDate, checkIn, checkOut,
+                        version >= 4 ? in.getInt() : 0);
+                bookings.put(bookingId, booking);
+            }
+        }
+    }
+
+    // Applies the records after position from each segment of the log. A torn record at the end of the
+    // active segment, left by a crash mid-append, is cut off.
+    private void replay(Path log, long position) throws IOException {
+        List<Journal.Segment> segments = Journal.segments(log);
+        if (!segments.isEmpty() && segments.get(0).start > position) {
+            throw new IOException("Journal " + log + " was compacted past the snapshot; records from " + position
+                    + " to " + segments.get(0).start + " are gone");
+        }
+        for (Journal.Segment segment : segments) {
+            if (segment.end() > position) {
+                replaySegment(segment, Math.max(0, position - segment.start), segment.path.equals(log));
+            }
+        }
+    }
+
+    private void replaySegment(Journal.Segment segment, long offset, boolean active) throws IOException {
+        long end;
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            end = offset;
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b == '\n') {
+                    apply(line.toString(StandardCharsets.UTF_8));
+                    line.reset();
+                    end = offset;
+                } else {
+                    line.write(b);
+                }
+            }
+            if (line.size() == 0) {
+                return;
+            }
+        }
+        if (!active) {
+            throw new IOException("Sealed journal segment ends mid-record: " + segment.path);
+        }
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+            channel.truncate(end);
+        }
+    }
+
+    private void apply(String line) {
+        String[] r = Records.decode(line);
+        if (r == null) {
+            return;
+        }
+        switch (r[0]) {
+            case Records.SELLER_REGISTERED: {
+                Seller seller = new Seller(Integer.parseInt(r[1]), r[2], r[3], r[4], r[5], Integer.parseInt(r[6]));
+                users.put(seller.getUserId(), seller);
+                listings.put(seller, new LinkedHashSet<>());
+                break;
+            }
+            case Records.BUYER_REGISTERED: {
+                Buyer buyer = new Buyer(Integer.parseInt(r[1]), r[2], r[3], r[4], Integer.parseInt(r[5]), r[6]);
+                users.put(buyer.getUserId(), buyer);
+                break;
+            }
+            case Records.PROFILE_UPDATED: {
+                User user = users.get(Integer.parseInt(r[1]));
+                if (user != null) {
+                    user.applyProfile(r[2], r[3], r[4]);
+                }
+                break;
+            }
+            case Records.BUDGET_SET: {
+                User user = users.get(Integer.parseInt(r[1]));
+                if (user instanceof Buyer) {
+                    ((Buyer) user).applyBudgetRange(Integer.parseInt(r[2]));
+                }
+                break;
+            }
+            case Records.WISHLIST_ADDED: {
+                User user = users.get(Integer.parseInt(r[1]));
+                if (user instanceof Buyer) {
+                    addWishlistItem((Buyer) user, r[2]);
+                }
+                break;
+            }
+            case Records.PROPERTY_ADDED: {
+                Property property = new Property(Integer.parseInt(r[1]), r[2], Integer.parseInt(r[3]), r[4]);
+                property.applyAvailable(Boolean.parseBoolean(r[5]));
+                if (r.length > 7) {
+                    property.applyCoordinates(Double.parseDouble(r[6]), Double.parseDouble(r[7]));
+                }
+                properties.put(property.getPropertyId(), property);
+                break;
+            }
+            case Records.PROPERTY_UPDATED: {
+                Property property = properties.get(Integer.parseInt(r[1]));
+                if (property != null) {
+                    property.applyUpdate(r[2], Integer.parseInt(r[3]), r[4]);
+                }
+                break;
+            }
+            case Records.PROPERTY_AVAILABILITY: {
+                Property property = properties.get(Integer.parseInt(r[1]));
+                if (property != null) {
+                    property.applyAvailable(Boolean.parseBoolean(r[2]));
+                }
+                break;
+            }
+            case Records.PROPERTY_LOCATED: {
+                Property property = properties.get(Integer.parseInt(r[1]));
+                if (property != null) {
+                    property.applyCoordinates(Double.parseDouble(r[2]), Double.parseDouble(r[3]));
+                }
+                break;
+            }
+            case Records.PROPERTY_REMOVED:
+                properties.remove(Integer.parseInt(r[1]));
+                break;
+            case Records.LISTING_ADDED:
+            case Records.LISTING_REMOVED: {
+                User user = users.get(Integer.parseInt(r[1]));
+                if (user instanceof Seller) {
+                    Seller seller = (Seller) user;
+                    LinkedHashSet<Integer> ids = listings.computeIfAbsent(seller, s -> new LinkedHashSet<>());
+                    if (r[0].equals(Records.LISTING_ADDED)) {
+                        ids.add(Integer.parseInt(r[2]));
+                        seller.adjustActiveListings(1);
+                    } else {
+                        ids.remove(Integer.parseInt(r[2]));
+                        seller.adjustActiveListings(-1);
+                    }
+                }
+                break;
+            }
+            case Records.BOOKING_CONFIRMED: {
+                Booking booking = new Booking(Integer.parseInt(r[1]), Integer.parseInt(r[2]), r[3], r[4], r[5],
+                        r.length > 6 ? Integer.parseInt(r[6]) : 0);
+                bookings.put(booking.getBookingId(), booking);
+                break;
+            }
+            case Records.BOOKING_CANCELLED:
+                bookings.remove(Integer.parseInt(r[1]));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void install(PropertyManagementSystem pms, IntPredicate listedElsewhere) {
+        users.forEachValue(user -> {
+            if (pms.findUser(user.getUsername()) != null) {
+                System.err.println("Skipping user with duplicate username: " + user.getUsername());
+            } else {
+                pms.attachUser(user);
+            }
+        });
+        properties.forEachValue(pms::attachProperty);
+        bookings.forEachValue(booking -> {
+            if (!pms.attachBooking(booking)) {
+                System.err.println("Skipping overlapping booking: " + booking.getBookingId());
+            }
+        });
+        for (Map.Entry<Seller, LinkedHashSet<Integer>> entry : listings.entrySet()) {
+            int[] owned = new int[entry.getValue().size()];
+            int count = 0;
+            for (int propertyId : entry.getValue()) {
+                if (properties.containsKey(propertyId) || (listedElsewhere != null && listedElsewhere.test(propertyId))) {
+                    owned[count++] = propertyId;
+                }
+            }
+            Seller seller = entry.getKey();
+            seller.restoreListings(Arrays.copyOf(owned, count), seller.getActiveListingsCount());
+        }
+    }
+
+    // Wishlist entries are property ids; older logs and snapshots hold text such as "Property ID: 42",
+    // and entries without an id are dropped
+    private static void addWishlistItem(Buyer buyer, String item) {
+        String id = item.startsWith("Property ID: ") ? item.substring("Property ID: ".length()) : item;
+        try {
+            buyer.applyWishlistAdd(Integer.parseInt(id.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Skipping wishlist entry without a property ID: " + item);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
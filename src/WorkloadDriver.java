@@ -0,0 +1,565 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+// Headless load generator for a PropertyManagementSystem, or with shards=n for a ShardedPropertySystem.
+// Worker threads run a weighted mix of the menu operations (registrations, logins, searches, listing
+// changes, wishlists and bookings), either generated from a seed or replayed from a script, unthrottled
+// or at a fixed rate, then print throughput and latency percentiles per operation.
+//
+// Each operation is one journal-style record, e.g. "SEARCH\tbuyer12\tHarbour", so a generated run can
+// be written with record=<file> and replayed with script=<file>. The file lists operations in the order
+// they were dispatched, and a replay dispatches them in that order; with threads=1 the outcomes match
+// too, while concurrent workers may interleave them differently. At a fixed rate, latency is
+// measured from when an operation was due rather than when it started, so a stall counts against
+// every operation queued behind it.
+class WorkloadDriver {
+    enum Op {
+        REGISTER_SELLER(1), REGISTER_BUYER(1), LOGIN(10), SEARCH(30), SEARCH_PRICE(15), SEARCH_NEARBY(5),
+        ADD_PROPERTY(8), REMOVE_PROPERTY(2), ADD_TO_WISHLIST(10), BOOK(15), CANCEL_BOOKING(3);
+
+        final int weight;
+
+        Op(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    // Settings given as key=value arguments; see parse
+    static class Options {
+        int threads = 8;
+        // Operations per second across all threads; 0 runs unthrottled
+        double rate;
+        double seconds = 30;
+        // Stops after this many operations when positive
+        long ops;
+        Path script;
+        Path record;
+        int sellers = 100;
+        int buyers = 1000;
+        int properties = 10000;
+        long seed = 1;
+        // Runs in a temporary directory, deleted afterwards, when null
+        Path dataDir;
+        // Partitions the catalog over this many systems (see ShardedPropertySystem) when positive
+        int shards;
+
+        static Options parse(String[] args, int from) {
+            Options options = new Options();
+            for (int i = from; i < args.length; i++) {
+                int eq = args[i].indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Expected key=value: " + args[i]);
+                }
+                String key = args[i].substring(0, eq);
+                String value = args[i].substring(eq + 1);
+                switch (key) {
+                    case "threads":
+                        options.threads = Integer.parseInt(value);
+                        break;
+                    case "rate":
+                        options.rate = Double.parseDouble(value);
+                        break;
+                    case "seconds":
+                        options.seconds = Double.parseDouble(value);
+                        break;
+                    case "ops":
+                        options.ops = Long.parseLong(value);
+                        break;
+                    case "script":
+                        options.script = Paths.get(value);
+                        break;
+                    case "record":
+                        options.record = Paths.get(value);
+                        break;
+                    case "sellers":
+                        options.sellers = Integer.parseInt(value);
+                        break;
+                    case "buyers":
+                        options.buyers = Integer.parseInt(value);
+                        break;
+                    case "properties":
+                        options.properties = Integer.parseInt(value);
+                        break;
+                    case "seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case "dataDir":
+                        options.dataDir = Paths.get(value);
+                        break;
+                    case "shards":
+                        options.shards = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown workload option: " + key);
+                }
+            }
+            if (options.threads <= 0 || options.sellers <= 0 || options.buyers <= 0 || options.properties <= 0) {
+                throw new IllegalArgumentException("threads, sellers, buyers and properties must be positive");
+            }
+            if (options.shards < 0) {
+                throw new IllegalArgumentException("shards must not be negative");
+            }
+            return options;
+        }
+    }
+
+    // Per-operation results
+    private static class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder missed = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    static final String PASSWORD = "workload";
+    private static final String[] CITIES = {
+        "Springfield", "Riverton", "Lakeside", "Fairview", "Greenville", "Franklin", "Clinton", "Madison",
+        "Georgetown", "Salem", "Ashland", "Burlington", "Manchester", "Oxford", "Milton", "Newport"
+    };
+    private static final String[] DISTRICTS = {"North", "South", "East", "West", "Central", "Old Town", "Harbour", "Hills"};
+    private static final String[] TYPES = {"Apartment", "House", "Villa", "Studio", "Townhouse", "Cottage"};
+    private static final int FIRST_DAY = Math.toIntExact(LocalDate.of(2025, 1, 1).toEpochDay());
+    private static final int RESULT_LIMIT = 20;
+
+    // Users and sessions; also the catalog unless sharded
+    private final PropertyManagementSystem pms;
+    // Holds the catalog when the run is sharded, otherwise null
+    private final ShardedPropertySystem sharded;
+    private final Options options;
+    private final Stats[] stats = new Stats[Op.values().length];
+    private final int[] cumulativeWeights = new int[Op.values().length];
+    private final AtomicInteger sellerCount = new AtomicInteger();
+    private final AtomicInteger buyerCount = new AtomicInteger();
+    private final AtomicInteger lastPropertyId = new AtomicInteger();
+    private final AtomicInteger lastBookingId = new AtomicInteger();
+    private final AtomicLong nextOp = new AtomicLong();
+    private final String today = LocalDate.now().toString();
+    private BufferedWriter recorder;
+    // Recorded operations waiting for an earlier index to finish; "" marks an index that ran nothing
+    private final Map<Long, String> unrecorded = new HashMap<>();
+    private long nextRecorded;
+
+    public WorkloadDriver(PropertyManagementSystem pms, Options options) {
+        this(pms, null, options);
+    }
+
+    // Runs against a sharded catalog, with users in its directory
+    public WorkloadDriver(ShardedPropertySystem sharded, Options options) {
+        this(sharded.getDirectory(), sharded, options);
+    }
+
+    private WorkloadDriver(PropertyManagementSystem pms, ShardedPropertySystem sharded, Options options) {
+        this.pms = pms;
+        this.sharded = sharded;
+        this.options = options;
+        int total = 0;
+        for (Op op : Op.values()) {
+            stats[op.ordinal()] = new Stats();
+            total += op.weight;
+            cumulativeWeights[op.ordinal()] = total;
+        }
+        sellerCount.set(options.sellers);
+        buyerCount.set(options.buyers);
+        lastPropertyId.set(options.properties);
+    }
+
+    // Runs a workload as described by options against a fresh or existing data directory
+    public static void run(Options options) throws IOException {
+        Path dataDir = options.dataDir != null ? options.dataDir : Files.createTempDirectory("workload");
+        try {
+            WorkloadDriver driver = options.shards > 0
+                    ? new WorkloadDriver(ShardedPropertySystem.recover(dataDir, options.shards), options)
+                    : new WorkloadDriver(PropertyManagementSystem.recover(dataDir, new ListingMatcher(), null), options);
+            if (driver.pms.getUserList().isEmpty()) {
+                long start = System.nanoTime();
+                driver.seed(dataDir);
+                System.out.printf("Seeded %d sellers, %d buyers and %d properties in %d ms%n", options.sellers,
+                        options.buyers, options.properties, (System.nanoTime() - start) / 1_000_000);
+            }
+            driver.run();
+            Journal.closeAll();
+        } finally {
+            if (options.dataDir == null) {
+                deleteTree(dataDir);
+            }
+        }
+    }
+
+    // Loads the sellers, buyers and listings the generated operations refer to through the bulk importer.
+    // Users are seller1..sellerN and buyer1..buyerN with the workload password; property i is listed by
+    // seller (i mod N) + 1. A sharded catalog has no importer, so its listings are added one at a time.
+    void seed(Path dir) throws IOException {
+        SplittableRandom random = new SplittableRandom(options.seed);
+        List<String> sellers = new ArrayList<>();
+        sellers.add("userId,username,email,password");
+        for (int i = 1; i <= options.sellers; i++) {
+            sellers.add(i + ",seller" + i + ",seller" + i + "@example.com," + PASSWORD);
+        }
+        List<String> buyers = new ArrayList<>();
+        buyers.add("userId,username,email,password,budgetRange,locationWanted");
+        for (int i = 1; i <= options.buyers; i++) {
+            buyers.add((options.sellers + i) + ",buyer" + i + ",buyer" + i + "@example.com," + PASSWORD + ","
+                    + (100_000 + random.nextInt(900_000)) + "," + location(random));
+        }
+        List<String[]> listings = new ArrayList<>();
+        List<String> properties = new ArrayList<>();
+        properties.add("propertyId,location,price,type,seller,latitude,longitude");
+        for (int i = 1; i <= options.properties; i++) {
+            String[] property = newProperty(random, i);
+            listings.add(property);
+            properties.add(String.join(",", property[2], property[3], property[4], property[5], property[1],
+                    property[6], property[7]));
+        }
+        importLines(dir.resolve("workload-sellers.csv"), sellers, BulkImporter.Kind.SELLERS);
+        importLines(dir.resolve("workload-buyers.csv"), buyers, BulkImporter.Kind.BUYERS);
+        if (sharded == null) {
+            importLines(dir.resolve("workload-properties.csv"), properties, BulkImporter.Kind.PROPERTIES);
+            return;
+        }
+        for (String[] listing : listings) {
+            if (!execute(Op.ADD_PROPERTY, listing)) {
+                throw new IOException("Seeding could not list property " + listing[2]);
+            }
+        }
+    }
+
+    private void importLines(Path path, List<String> lines, BulkImporter.Kind kind) throws IOException {
+        Files.write(path, lines, StandardCharsets.UTF_8);
+        try {
+            ImportResult result = new BulkImporter(pms).importFile(path, kind);
+            if (result.getRejected() > 0) {
+                throw new IOException("Seeding rejected " + result.getErrors());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    // Runs the operations on options.threads workers and prints the report
+    void run() throws IOException {
+        List<String[]> script = options.script == null ? null : loadScript(options.script);
+        long limit = script != null ? script.size() : options.ops > 0 ? options.ops : Long.MAX_VALUE;
+        long intervalNanos = options.rate > 0 ? (long) (1e9 / options.rate) : 0;
+        if (options.record != null) {
+            recorder = Files.newBufferedWriter(options.record, StandardCharsets.UTF_8);
+        }
+        Thread[] workers = new Thread[options.threads];
+        long start = System.nanoTime();
+        boolean timed = script == null && options.ops <= 0;
+        long deadline = start + (long) (options.seconds * 1e9);
+        for (int t = 0; t < workers.length; t++) {
+            SplittableRandom random = new SplittableRandom(options.seed * 31 + t);
+            workers[t] = new Thread(() -> work(random, script, limit, start, intervalNanos, timed, deadline),
+                    "workload-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for workers", e);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (recorder != null) {
+            recorder.close();
+        }
+        report(elapsed);
+    }
+
+    private void work(SplittableRandom random, List<String[]> script, long limit, long start, long intervalNanos,
+            boolean timed, long deadline) {
+        while (true) {
+            long index = nextOp.getAndIncrement();
+            if (index >= limit) {
+                return;
+            }
+            long due = start + index * intervalNanos;
+            long now;
+            while ((now = System.nanoTime()) < due) {
+                LockSupport.parkNanos(due - now);
+            }
+            if (timed && now - deadline >= 0) {
+                if (recorder != null) {
+                    record(index, null);
+                }
+                return;
+            }
+            String[] operation = script != null ? script.get((int) index) : generate(random);
+            if (recorder != null) {
+                record(index, operation);
+            }
+            Op op;
+            try {
+                op = Op.valueOf(operation[0]);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown workload operation: " + operation[0]);
+                continue;
+            }
+            Stats opStats = stats[op.ordinal()];
+            long begin = intervalNanos > 0 ? due : now;
+            try {
+                if (!execute(op, operation)) {
+                    opStats.missed.increment();
+                }
+            } catch (IOException | RuntimeException e) {
+                opStats.errors.increment();
+            }
+            opStats.latency.recordSince(begin);
+        }
+    }
+
+    // Runs one operation the way the menus and the HTTP server do; false when it found nothing to act on
+    // or was refused, such as a wrong password or a booking clash
+    boolean execute(Op op, String[] args) throws IOException {
+        switch (op) {
+            case REGISTER_SELLER:
+                pms.registerUser(new Seller(pms.nextUserId(), args[1], args[1] + "@example.com", PASSWORD, "", 0));
+                return true;
+            case REGISTER_BUYER:
+                pms.registerUser(new Buyer(pms.nextUserId(), args[1], args[1] + "@example.com", PASSWORD,
+                        Integer.parseInt(args[2]), args[3]));
+                return true;
+            case LOGIN: {
+                String token = pms.login(args[1], PASSWORD);
+                return token != null && pms.logout(token);
+            }
+            case SEARCH: {
+                User user = pms.findUser(args[1]);
+                if (!(user instanceof Buyer)) {
+                    return false;
+                }
+                if (sharded != null) {
+                    sharded.searchProperty(args[2], false);
+                } else {
+                    ((Buyer) user).searchProperty(pms, args[2], 0, RESULT_LIMIT);
+                }
+                return true;
+            }
+            case SEARCH_PRICE:
+                if (sharded != null) {
+                    sharded.searchByPrice(Integer.parseInt(args[1]), Integer.parseInt(args[2]), null, null, true,
+                            RESULT_LIMIT);
+                } else {
+                    pms.searchByPrice(Integer.parseInt(args[1]), Integer.parseInt(args[2]), null, null, true, RESULT_LIMIT);
+                }
+                return true;
+            case SEARCH_NEARBY:
+                if (sharded != null) {
+                    sharded.searchNearby(Double.parseDouble(args[1]), Double.parseDouble(args[2]),
+                            Double.parseDouble(args[3]), Integer.MIN_VALUE, Integer.MAX_VALUE, null, true, RESULT_LIMIT);
+                } else {
+                    pms.searchNearby(Double.parseDouble(args[1]), Double.parseDouble(args[2]), Double.parseDouble(args[3]),
+                            Integer.MIN_VALUE, Integer.MAX_VALUE, null, true, RESULT_LIMIT);
+                }
+                return true;
+            case ADD_PROPERTY: {
+                User user = pms.findUser(args[1]);
+                if (!(user instanceof Seller)) {
+                    return false;
+                }
+                Property property = new Property(Integer.parseInt(args[2]), args[3], Integer.parseInt(args[4]), args[5],
+                        Double.parseDouble(args[6]), Double.parseDouble(args[7]));
+                if (sharded != null) {
+                    sharded.addProperty(property, (Seller) user);
+                } else {
+                    pms.addProperty(property, (Seller) user);
+                }
+                return true;
+            }
+            case REMOVE_PROPERTY: {
+                User user = pms.findUser(args[1]);
+                int propertyId = Integer.parseInt(args[2]);
+                Property property = sharded != null ? sharded.getProperty(propertyId) : pms.getProperty(propertyId);
+                if (!(user instanceof Seller) || property == null || !((Seller) user).ownsListing(propertyId)) {
+                    return false;
+                }
+                if (sharded != null) {
+                    ((Seller) user).removeProperty(property);
+                    return sharded.removeProperty(propertyId);
+                }
+                return pms.removeProperty(propertyId, (Seller) user);
+            }
+            case ADD_TO_WISHLIST: {
+                User user = pms.findUser(args[1]);
+                int propertyId = Integer.parseInt(args[2]);
+                if (!(user instanceof Buyer)
+                        || !(sharded != null ? sharded.containsProperty(propertyId) : pms.containsProperty(propertyId))) {
+                    return false;
+                }
+                ((Buyer) user).addToWishlist(propertyId);
+                return true;
+            }
+            case BOOK: {
+                int bookingId = sharded != null ? sharded.nextBookingId() : pms.nextBookingId();
+                Booking booking = new Booking(bookingId, Integer.parseInt(args[1]), today, args[2], args[3]);
+                if (!(sharded != null ? sharded.processBooking(booking) : pms.processBooking(booking))) {
+                    return false;
+                }
+                lastBookingId.accumulateAndGet(booking.getBookingId(), Math::max);
+                return true;
+            }
+            default: {
+                int bookingId = Integer.parseInt(args[1]);
+                if (sharded != null) {
+                    Booking booking = sharded.getBooking(bookingId);
+                    return booking != null && sharded.cancelBooking(booking);
+                }
+                Booking booking = pms.getBooking(bookingId);
+                return booking != null && pms.cancelBooking(booking);
+            }
+        }
+    }
+
+    // One operation drawn from the weighted mix, over the seeded users and listings plus those added since
+    String[] generate(SplittableRandom random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        Op op = Op.values()[0];
+        for (Op candidate : Op.values()) {
+            if (pick < cumulativeWeights[candidate.ordinal()]) {
+                op = candidate;
+                break;
+            }
+        }
+        String buyer = "buyer" + (1 + random.nextInt(buyerCount.get()));
+        switch (op) {
+            case REGISTER_SELLER:
+                return new String[] {op.name(), "seller" + sellerCount.incrementAndGet()};
+            case REGISTER_BUYER:
+                return new String[] {op.name(), "buyer" + buyerCount.incrementAndGet(),
+                    String.valueOf(100_000 + random.nextInt(900_000)), location(random)};
+            case LOGIN:
+                return new String[] {op.name(), random.nextBoolean() ? buyer : "seller" + (1 + random.nextInt(sellerCount.get()))};
+            case SEARCH:
+                return new String[] {op.name(), buyer, random.nextBoolean() ? CITIES[random.nextInt(CITIES.length)]
+                        : DISTRICTS[random.nextInt(DISTRICTS.length)]};
+            case SEARCH_PRICE: {
+                int min = 50_000 + random.nextInt(1_500_000);
+                return new String[] {op.name(), String.valueOf(min), String.valueOf(min + 10_000 + random.nextInt(200_000))};
+            }
+            case SEARCH_NEARBY: {
+                int city = random.nextInt(CITIES.length);
+                return new String[] {op.name(), String.valueOf(cityLatitude(city) + random.nextDouble() * 0.2 - 0.1),
+                    String.valueOf(cityLongitude(city) + random.nextDouble() * 0.2 - 0.1), String.valueOf(1 + random.nextInt(10))};
+            }
+            case ADD_PROPERTY:
+                return newProperty(random, lastPropertyId.incrementAndGet());
+            case REMOVE_PROPERTY: {
+                int propertyId = 1 + random.nextInt(lastPropertyId.get());
+                return new String[] {op.name(), owner(propertyId), String.valueOf(propertyId)};
+            }
+            case ADD_TO_WISHLIST:
+                return new String[] {op.name(), buyer, String.valueOf(1 + random.nextInt(lastPropertyId.get()))};
+            case BOOK: {
+                int checkIn = FIRST_DAY + random.nextInt(730);
+                return new String[] {op.name(), String.valueOf(1 + random.nextInt(lastPropertyId.get())),
+                    LocalDate.ofEpochDay(checkIn).toString(), LocalDate.ofEpochDay(checkIn + 1 + random.nextInt(7)).toString()};
+            }
+            default:
+                return new String[] {op.name(), String.valueOf(1 + random.nextInt(Math.max(1, lastBookingId.get())))};
+        }
+    }
+
+    // An ADD_PROPERTY operation for a new listing near one of the cities
+    private String[] newProperty(SplittableRandom random, int propertyId) {
+        int city = random.nextInt(CITIES.length);
+        return new String[] {Op.ADD_PROPERTY.name(), owner(propertyId), String.valueOf(propertyId),
+            CITIES[city] + " " + DISTRICTS[random.nextInt(DISTRICTS.length)],
+            String.valueOf(50_000 + random.nextInt(1_950_000)), TYPES[random.nextInt(TYPES.length)],
+            String.valueOf(cityLatitude(city) + random.nextDouble() * 0.2 - 0.1),
+            String.valueOf(cityLongitude(city) + random.nextDouble() * 0.2 - 0.1)};
+    }
+
+    private String owner(int propertyId) {
+        return "seller" + (propertyId % options.sellers + 1);
+    }
+
+    private static String location(SplittableRandom random) {
+        return CITIES[random.nextInt(CITIES.length)] + " " + DISTRICTS[random.nextInt(DISTRICTS.length)];
+    }
+
+    // Cities sit on a synthetic grid half a degree apart
+    private static double cityLatitude(int city) {
+        return 50 + (city / 4) * 0.5;
+    }
+
+    private static double cityLongitude(int city) {
+        return (city % 4) * 0.5;
+    }
+
+    // Writes operations in index order, holding back any that arrive ahead of an earlier one
+    private synchronized void record(long index, String[] operation) {
+        unrecorded.put(index, operation == null ? ""
+                : Records.encode(operation[0], (Object[]) Arrays.copyOfRange(operation, 1, operation.length)));
+        try {
+            String line;
+            while ((line = unrecorded.remove(nextRecorded)) != null) {
+                nextRecorded++;
+                if (!line.isEmpty()) {
+                    recorder.write(line);
+                    recorder.newLine();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not record workload: " + e.getMessage());
+        }
+    }
+
+    private static List<String[]> loadScript(Path path) throws IOException {
+        List<String[]> operations = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] operation = Records.decode(line);
+            if (operation != null) {
+                operations.add(operation);
+            }
+        }
+        return operations;
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long total = 0;
+        System.out.printf("%-16s %9s %8s %7s %10s %9s %9s %9s %9s %9s%n", "operation", "count", "missed", "errors",
+                "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (Op op : Op.values()) {
+            Stats opStats = stats[op.ordinal()];
+            LatencyHistogram latency = opStats.latency;
+            long count = latency.getCount();
+            if (count == 0) {
+                continue;
+            }
+            total += count;
+            System.out.printf("%-16s %9d %8d %7d %10.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n", op.name().toLowerCase(), count,
+                    opStats.missed.sum(), opStats.errors.sum(), count / seconds, latency.getPercentile(0.5) / 1e3,
+                    latency.getPercentile(0.9) / 1e3, latency.getPercentile(0.99) / 1e3,
+                    latency.getPercentile(0.999) / 1e3, latency.getMax() / 1e3);
+        }
+        System.out.printf("%d operations on %d threads in %.1f s: %.1f ops/s%s%n", total, options.threads, seconds,
+                total / seconds, options.rate > 0 ? String.format(" (target %.1f)", options.rate) : "");
+    }
+
+    static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+// Hammers a handful of properties with overlapping bookings and cancels from many threads while
+// another thread keeps updating the same listings, then checks that no two live bookings for a
+// property overlap, that every confirm and cancel is accounted for, and that the journal replays to
+// the same bookings. Runs in a temporary directory, deleted afterwards.
+class BookingStressTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+    // Stays start within this many days, so most attempts collide
+    private static final int WINDOW_DAYS = 60;
+    private static final int PROPERTIES = 8;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    private static final long MILLIS = 3000;
+
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private volatile boolean running = true;
+    private volatile Throwable failure;
+
+    @Test
+    @Timeout(120)
+    void concurrentBookingsNeverOverlap() throws IOException, InterruptedException {
+        Path dataDir = Files.createTempDirectory("stresstest");
+        try {
+            PropertyManagementSystem pms = PropertyManagementSystem.recover(dataDir, new ListingMatcher(), null);
+            for (int id = 1; id <= PROPERTIES; id++) {
+                pms.addProperty(new Property(id, "Stress " + id, 100_000, "House"));
+            }
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                SplittableRandom random = new SplittableRandom(t);
+                workers.add(new Thread(() -> book(pms, random), "stress-" + t));
+            }
+            workers.add(new Thread(() -> updateListings(pms, new SplittableRandom(-1)), "stress-catalog"));
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            try {
+                Thread.sleep(MILLIS);
+            } finally {
+                running = false;
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            }
+
+            assertNull(failure, "worker threw");
+            assertTrue(confirmed.sum() > 0 && rejected.sum() > 0, "bookings should both succeed and collide");
+            List<Booking> live = pms.getBookingList();
+            assertNull(overlap(live));
+            assertEquals(confirmed.sum() - cancelled.sum(), live.size(), "live bookings");
+
+            Journal.closeAll();
+            List<Booking> replayed = PropertyManagementSystem.recover(dataDir, new ListingMatcher(), null)
+                    .getBookingList();
+            assertEquals(describe(live), describe(replayed), "journal replay");
+        } finally {
+            Journal.closeAll();
+            WorkloadDriver.deleteTree(dataDir);
+        }
+    }
+
+    // Books random short stays and now and then cancels one of this thread's own bookings
+    private void book(PropertyManagementSystem pms, SplittableRandom random) {
+        List<Booking> mine = new ArrayList<>();
+        String today = LocalDate.now().toString();
+        try {
+            while (running) {
+                if (!mine.isEmpty() && random.nextInt(4) == 0) {
+                    Booking booking = mine.remove(random.nextInt(mine.size()));
+                    if (!pms.cancelBooking(booking)) {
+                        throw new IllegalStateException("Own booking could not be cancelled: " + booking.getBookingId());
+                    }
+                    cancelled.increment();
+                    continue;
+                }
+                LocalDate checkIn = FIRST_DAY.plusDays(random.nextInt(WINDOW_DAYS));
+                Booking booking = new Booking(pms.nextBookingId(), 1 + random.nextInt(PROPERTIES), today,
+                        checkIn.toString(), checkIn.plusDays(1 + random.nextInt(5)).toString());
+                if (pms.processBooking(booking)) {
+                    confirmed.increment();
+                    mine.add(booking);
+                } else {
+                    rejected.increment();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            running = false;
+        }
+    }
+
+    // Catalog writes on the booked properties, so bookings race the catalog and journal locks too
+    private void updateListings(PropertyManagementSystem pms, SplittableRandom random) {
+        try {
+            while (running) {
+                Property property = pms.getProperty(1 + random.nextInt(PROPERTIES));
+                if (random.nextBoolean()) {
+                    pms.setAvailable(property, !property.isAvailable());
+                } else {
+                    pms.updateProperty(property, property.getLocation(), 100_000 + random.nextInt(1000), "House");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            running = false;
+        }
+    }
+
+    // Describes the first pair of live bookings for the same property whose stays overlap, or null
+    private static String overlap(List<Booking> bookings) {
+        Map<Integer, List<Booking>> byProperty = new HashMap<>();
+        for (Booking booking : bookings) {
+            byProperty.computeIfAbsent(booking.getPropertyId(), k -> new ArrayList<>()).add(booking);
+        }
+        for (List<Booking> stays : byProperty.values()) {
+            stays.sort(Comparator.comparingInt(Booking::getCheckInDay));
+            for (int i = 1; i < stays.size(); i++) {
+                if (stays.get(i).getCheckInDay() < stays.get(i - 1).getCheckOutDay()) {
+                    return "bookings " + stays.get(i - 1).getBookingId() + " and " + stays.get(i).getBookingId()
+                            + " overlap on property " + stays.get(i).getPropertyId();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<String> describe(List<Booking> bookings) {
+        List<String> lines = new ArrayList<>(bookings.size());
+        for (Booking booking : bookings) {
+            lines.add(booking.getBookingId() + " " + booking.getPropertyId() + " " + booking.getCheckInDate() + " "
+                    + booking.getCheckOutDate());
+        }
+        return lines;
+    }
+}
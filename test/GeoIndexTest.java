@@ -0,0 +1,36 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class GeoIndexTest {
+    private static GeoIndex index() {
+        GeoIndex index = new GeoIndex();
+        index.propertyAdded(new Property(1, "Oslo", 100, "Flat", 59.91, 10.75));
+        index.propertyAdded(new Property(2, "Sydney", 100, "Flat", -33.87, 151.21));
+        index.propertyAdded(new Property(3, "Bergen", 100, "Flat", 60.39, 5.32));
+        return index;
+    }
+
+    @Test
+    void rejectsRadiiThatAreNotFiniteAndNonNegative() {
+        GeoIndex index = index();
+        for (double radiusKm : new double[] {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -1}) {
+            assertThrows(IllegalArgumentException.class, () -> index.nearby(59.91, 10.75, radiusKm, p -> true, 10));
+        }
+    }
+
+    @Test
+    void radiusBeyondTheGlobeFindsEverythingNearestFirst() {
+        List<Property> result = index().nearby(59.91, 10.75, Double.MAX_VALUE, p -> true, 10);
+        assertEquals(List.of(1, 3, 2), result.stream().map(Property::getPropertyId).toList());
+    }
+
+    @Test
+    void zeroRadiusMatchesOnlyThePoint() {
+        List<Property> result = index().nearby(59.91, 10.75, 0, p -> true, 10);
+        assertEquals(List.of(1), result.stream().map(Property::getPropertyId).toList());
+    }
+}
@@ -0,0 +1,36 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class RecordsTest {
+    @Test
+    void nullFieldsRoundTrip() {
+        String line = Records.encode(Records.PROFILE_UPDATED, 7, null, "a@b.c", null);
+        assertArrayEquals(new String[] {Records.PROFILE_UPDATED, "7", null, "a@b.c", null}, Records.decode(line));
+    }
+
+    // Strings that look like the marker or like a printed null stay strings
+    @Test
+    void markerLikeStringsRoundTrip() {
+        String[] fields = {"null", "\\N", "\\N\\N", "", "N", "\\"};
+        String line = Records.encode(Records.PROFILE_UPDATED, (Object[]) fields);
+        String[] decoded = Records.decode(line);
+        assertArrayEquals(fields, Arrays.copyOfRange(decoded, 1, decoded.length));
+    }
+
+    @Test
+    void escapedCharactersRoundTrip() {
+        String location = "Line 1\nLine 2\tTabbed\r\\ end";
+        String line = Records.encode(Records.PROPERTY_UPDATED, 3, location, 1000, "Flat");
+        assertArrayEquals(new String[] {Records.PROPERTY_UPDATED, "3", location, "1000", "Flat"}, Records.decode(line));
+    }
+
+    @Test
+    void freeTextIsNotARecord() {
+        assertNull(Records.decode("Property added: 42"));
+        assertNull(Records.decode("lower\tcase"));
+    }
+}